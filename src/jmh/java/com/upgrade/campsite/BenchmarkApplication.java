@@ -0,0 +1,57 @@
+package com.upgrade.campsite;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Runs the application inside a benchmark fork with the test profile, against H2 and an embedded Redis. A Redis already
+ * listening on the test port is reused.
+ */
+public final class BenchmarkApplication implements AutoCloseable {
+
+    private static final int REDIS_PORT = 6380;
+
+    private final RedisServer redisServer;
+
+    private final ConfigurableApplicationContext context;
+
+    public BenchmarkApplication(final String... properties) throws IOException {
+        if (isRedisRunning()) {
+            redisServer = null;
+        } else {
+            redisServer = new RedisServer(REDIS_PORT);
+            redisServer.start();
+        }
+        final SpringApplication application = new SpringApplication(CampsiteApplication.class);
+        application.setAdditionalProfiles("test");
+        context = application.run(properties);
+    }
+
+    public <T> T getBean(final Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public <T> T getBean(final String name, final Class<T> type) {
+        return context.getBean(name, type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    private static boolean isRedisRunning() {
+        try (Socket socket = new Socket("localhost", REDIS_PORT)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
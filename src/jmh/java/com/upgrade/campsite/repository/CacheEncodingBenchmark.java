@@ -0,0 +1,87 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.configuration.EpochDayRedisSerializer;
+import com.upgrade.campsite.utils.DateRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of 1000 cached nights in each format the cache used: a set of Java serialized dates (the previous
+ * versions), a set of epoch days, and the bitmap. The bytes stored by each format are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheEncodingBenchmark {
+
+    private static final int NIGHTS = 1000;
+
+    private final RedisSerializer<Object> jdkSerializer = new JdkSerializationRedisSerializer();
+
+    private final RedisSerializer<LocalDate> epochDaySerializer = new EpochDayRedisSerializer();
+
+    private List<byte[]> jdkMembers;
+
+    private List<byte[]> epochDayMembers;
+
+    private DateRange range;
+
+    private byte[] bitmap;
+
+    @Setup
+    public void setup() {
+        final LocalDate first = LocalDate.of(2019, 1, 1);
+        range = DateRange.of(first, first.plusDays(NIGHTS - 1));
+        jdkMembers = new ArrayList<>(NIGHTS);
+        epochDayMembers = new ArrayList<>(NIGHTS);
+        range.forEachDay(day -> {
+            jdkMembers.add(jdkSerializer.serialize(LocalDate.ofEpochDay(day)));
+            epochDayMembers.add(epochDaySerializer.serialize(LocalDate.ofEpochDay(day)));
+        });
+        bitmap = new byte[(NIGHTS + Byte.SIZE - 1) / Byte.SIZE];
+        for (int night = 0; night < NIGHTS; night++) {
+            bitmap[night / Byte.SIZE] |= 0x80 >>> (night % Byte.SIZE);
+        }
+        System.out.printf("%nbytes for %d nights: jdk %d, epoch days %d, bitmap %d%n", NIGHTS, size(jdkMembers),
+                size(epochDayMembers), bitmap.length);
+    }
+
+    @Benchmark
+    public void decodeJdkSet(final Blackhole blackhole) {
+        jdkMembers.forEach(member -> blackhole.consume(jdkSerializer.deserialize(member)));
+    }
+
+    @Benchmark
+    public void decodeEpochDaySet(final Blackhole blackhole) {
+        epochDayMembers.forEach(member -> blackhole.consume(epochDaySerializer.deserialize(member)));
+    }
+
+    @Benchmark
+    public BitSet decodeBitmap() {
+        return ReservationCacheRepositoryImpl.toNights(bitmap, 0, range);
+    }
+
+    private static long size(final List<byte[]> members) {
+        return members.stream().mapToLong(member -> member.length).sum();
+    }
+}
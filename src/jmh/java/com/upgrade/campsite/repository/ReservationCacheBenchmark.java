@@ -0,0 +1,97 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.BenchmarkApplication;
+import com.upgrade.campsite.utils.DateRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the cached nights, and the Redis round trip of a range read with the near cache disabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationCacheBenchmark {
+
+    @Param({"1", "30", "365"})
+    private int days;
+
+    private BenchmarkApplication application;
+
+    private ReservationCacheRepository reservationCacheRepository;
+
+    private RedisSerializer<Object> valueSerializer;
+
+    private LocalDate startDate;
+
+    private DateRange range;
+
+    private byte[] bitmap;
+
+    private long firstByte;
+
+    private byte[] serializedDate;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        application = new BenchmarkApplication();
+        reservationCacheRepository = application.getBean(ReservationCacheRepository.class);
+        valueSerializer = (RedisSerializer<Object>) application.getBean("redisTemplate", RedisTemplate.class).getValueSerializer();
+
+        startDate = LocalDate.now().plusDays(1);
+        range = DateRange.of(startDate, startDate.plusDays(days - 1));
+        reservationCacheRepository.initializeCache(range);
+
+        firstByte = ReservationCacheRepositoryImpl.toOffset(range.getFirstDay()) / Byte.SIZE;
+        final long lastByte = ReservationCacheRepositoryImpl.toOffset(range.getLastDay()) / Byte.SIZE;
+        bitmap = new byte[(int) (lastByte - firstByte + 1)];
+        Arrays.fill(bitmap, (byte) 0xFF);
+        serializedDate = valueSerializer.serialize(startDate);
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public BitSet decodeBitmap() {
+        return ReservationCacheRepositoryImpl.toNights(bitmap, firstByte, range);
+    }
+
+    @Benchmark
+    public byte[] serializeDate() {
+        return valueSerializer.serialize(startDate);
+    }
+
+    @Benchmark
+    public Object deserializeDate() {
+        return valueSerializer.deserialize(serializedDate);
+    }
+
+    @Benchmark
+    public BitSet getReservations() {
+        return reservationCacheRepository.getReservations(range);
+    }
+}
@@ -0,0 +1,84 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.BenchmarkApplication;
+import com.upgrade.campsite.presenter.AvailabilityBitmap;
+import com.upgrade.campsite.presenter.AvailabilityData;
+import com.upgrade.campsite.presenter.AvailabilityRun;
+import com.upgrade.campsite.presenter.BookingData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Availability of a window starting tomorrow, with every other night of the bookable month taken.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+    @Param({"1", "30", "365"})
+    private int days;
+
+    @Param({"false", "true"})
+    private boolean nearCache;
+
+    private BenchmarkApplication application;
+
+    private ReservationService reservationService;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    @Setup
+    public void setup() throws Exception {
+        application = new BenchmarkApplication("--campsite.cache.near.enabled=" + nearCache);
+        reservationService = application.getBean(ReservationService.class);
+        application.getBean(ReservationCacheWarmer.class).warmUp().get();
+
+        startDate = LocalDate.now().plusDays(1);
+        endDate = startDate.plusDays(days - 1);
+        for (LocalDate night = startDate; night.isBefore(LocalDate.now().plusMonths(1)); night = night.plusDays(2)) {
+            reservationService.book(BookingData.builder().checkIn(night).checkOut(night)
+                    .name("Benchmark").email("benchmark@campsite.com").build());
+        }
+        application.getBean(ReservationOutboxDispatcher.class).dispatch();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public List<AvailabilityData> findCampsiteAvailability() {
+        return reservationService.findCampsiteAvailability(startDate, endDate);
+    }
+
+    @Benchmark
+    public List<AvailabilityRun> findCampsiteAvailabilityRuns() {
+        return reservationService.findCampsiteAvailabilityCalendar(startDate, endDate).toRuns();
+    }
+
+    @Benchmark
+    public AvailabilityBitmap findCampsiteAvailabilityBitmap() {
+        return reservationService.findCampsiteAvailabilityCalendar(startDate, endDate).toBitmap();
+    }
+}
@@ -0,0 +1,85 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.BenchmarkApplication;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to book a group of one-night stays through one batch call and through one call per stay. The booking window
+ * only allows about a month ahead, so the group is at most 28 nights. The reservations are deleted between two
+ * invocations, outside of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBookingBenchmark {
+
+    @Param({ "10", "28" })
+    private int size;
+
+    private BenchmarkApplication application;
+
+    private ReservationService reservationService;
+
+    private List<BookingData> bookings;
+
+    @Setup
+    public void setup() throws Exception {
+        application = new BenchmarkApplication();
+        reservationService = application.getBean(ReservationService.class);
+        application.getBean(ReservationCacheWarmer.class).warmUp().get();
+        bookings = new ArrayList<>(size);
+        for (int night = 1; night <= size; night++) {
+            bookings.add(BookingData.builder().checkIn(LocalDate.now().plusDays(night))
+                    .checkOut(LocalDate.now().plusDays(night)).name("Benchmark").email("benchmark@campsite.com")
+                    .build());
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteReservations() {
+        application.getBean(ReservationNightRepository.class).deleteAllInBatch();
+        application.getBean(ReservationRepository.class).deleteAll();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public Object bookAll() throws Exception {
+        return reservationService.bookAll(bookings);
+    }
+
+    @Benchmark
+    public Object bookOneByOne() throws Exception {
+        final List<String> transactionIds = new ArrayList<>(size);
+        for (final BookingData bookingData : bookings) {
+            transactionIds.add(reservationService.book(bookingData));
+        }
+        return transactionIds;
+    }
+}
@@ -0,0 +1,128 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.BenchmarkApplication;
+import com.upgrade.campsite.presenter.BookingData;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end booking throughput. Every thread books and cancels its own night, so the threads only compete for the
+ * shared resources (connections, lock stripes, the outbox) and never for the same dates. Change the number of threads
+ * with the JMH -t option.
+ *
+ * The modify benchmarks move a reservation by one night back and forth, in place and as the former cancel and
+ * re-book, to compare the two.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class BookingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private BenchmarkApplication application;
+
+        private ReservationService reservationService;
+
+        @Setup
+        public void setup() throws Exception {
+            application = new BenchmarkApplication();
+            reservationService = application.getBean(ReservationService.class);
+            application.getBean(ReservationCacheWarmer.class).warmUp().get();
+        }
+
+        /**
+         * Prints how long each operation kept its nights locked, which bounds the throughput of bookings competing
+         * for the same nights.
+         */
+        @TearDown
+        public void tearDown() {
+            application.getBean(MeterRegistry.class).find("campsite.booking.lock.hold").timers()
+                    .forEach(timer -> System.out.printf("%nlock hold %s: mean %.3f ms, max %.3f ms over %d%n",
+                            timer.getId().getTag("operation"), timer.mean(TimeUnit.MILLISECONDS),
+                            timer.max(TimeUnit.MILLISECONDS), timer.count()));
+            application.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Night {
+
+        private BookingData bookingData;
+
+        @Setup
+        public void setup(final Application application) {
+            final LocalDate night = LocalDate.now().plusDays(2 + application.threads.getAndIncrement() % 28);
+            bookingData = BookingData.builder().checkIn(night).checkOut(night)
+                    .name("Benchmark").email("benchmark@campsite.com").build();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Stay {
+
+        private BookingData earlier;
+
+        private BookingData later;
+
+        private boolean moved;
+
+        private String transactionId;
+
+        @Setup
+        public void setup(final Application application) throws Exception {
+            final LocalDate checkIn = LocalDate.now().plusDays(2 + application.threads.getAndIncrement() % 9 * 3);
+            earlier = BookingData.builder().checkIn(checkIn).checkOut(checkIn.plusDays(1))
+                    .name("Benchmark").email("benchmark@campsite.com").build();
+            later = BookingData.builder().checkIn(checkIn.plusDays(1)).checkOut(checkIn.plusDays(2))
+                    .name("Benchmark").email("benchmark@campsite.com").build();
+            transactionId = application.reservationService.book(earlier);
+        }
+
+        private BookingData next() {
+            moved = !moved;
+            final BookingData bookingData = moved ? later : earlier;
+            bookingData.setTransactionId(transactionId);
+            return bookingData;
+        }
+    }
+
+    @Benchmark
+    public void bookAndCancel(final Application application, final Night night) throws Exception {
+        final String transactionId = application.reservationService.book(night.bookingData);
+        application.reservationService.unBook(transactionId);
+    }
+
+    @Benchmark
+    public void modifyInPlace(final Application application, final Stay stay) throws Exception {
+        stay.transactionId = application.reservationService.modifyBook(stay.next());
+    }
+
+    @Benchmark
+    public void modifyByCancelAndBook(final Application application, final Stay stay) throws Exception {
+        final BookingData bookingData = stay.next();
+        application.reservationService.unBook(stay.transactionId);
+        stay.transactionId = application.reservationService.book(bookingData);
+    }
+}
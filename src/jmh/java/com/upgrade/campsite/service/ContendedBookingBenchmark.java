@@ -0,0 +1,117 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.BenchmarkApplication;
+import com.upgrade.campsite.exception.AvailabilityException;
+import com.upgrade.campsite.presenter.BookingData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every thread keeps trying to book the same already booked nights, as when a popular weekend opens. The locked path
+ * waits for the lock and fails on the night index, the fast path is refused by the Redis script alone.
+ *
+ * The free nights benchmark times the bookings which succeed, on a night of its own for every thread, so the cost the
+ * fast path adds to a successful booking (the claim script, the outbox event setting the bits again) is measured
+ * against what it saves on a refused one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ContendedBookingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({ "false", "true" })
+        private boolean fastPath;
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private BenchmarkApplication application;
+
+        private ReservationService reservationService;
+
+        private BookingData bookingData;
+
+        @Setup
+        public void setup() throws Exception {
+            application = new BenchmarkApplication("--campsite.booking.fast-path=" + fastPath);
+            reservationService = application.getBean(ReservationService.class);
+            application.getBean(ReservationCacheWarmer.class).warmUp().get();
+            bookingData = BookingData.builder().checkIn(LocalDate.now().plusDays(2))
+                    .checkOut(LocalDate.now().plusDays(3)).name("Benchmark").email("benchmark@campsite.com").build();
+            reservationService.book(bookingData);
+            application.getBean(ReservationOutboxDispatcher.class).dispatch();
+        }
+
+        @TearDown
+        public void tearDown() {
+            application.close();
+        }
+    }
+
+    /**
+     * The booking is cancelled and the outbox dispatched between two invocations, outside of the measurement, so the
+     * night is free again in the database and in the cache.
+     */
+    @State(Scope.Thread)
+    public static class FreeNight {
+
+        private Application application;
+
+        private BookingData bookingData;
+
+        private String transactionId;
+
+        @Setup
+        public void setup(final Application application) {
+            this.application = application;
+            final LocalDate night = LocalDate.now().plusDays(5 + application.threads.getAndIncrement() % 25);
+            bookingData = BookingData.builder().checkIn(night).checkOut(night)
+                    .name("Benchmark").email("benchmark@campsite.com").build();
+        }
+
+        @TearDown(Level.Invocation)
+        public void cancel() throws Exception {
+            application.reservationService.unBook(transactionId);
+            application.application.getBean(ReservationOutboxDispatcher.class).dispatch();
+        }
+    }
+
+    @Benchmark
+    public boolean bookBookedNights(final Application application) throws Exception {
+        try {
+            application.reservationService.book(BookingData.builder().checkIn(application.bookingData.getCheckIn())
+                    .checkOut(application.bookingData.getCheckOut()).name("Benchmark")
+                    .email("benchmark@campsite.com").build());
+            return true;
+        } catch (AvailabilityException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public String bookFreeNights(final Application application, final FreeNight night) throws Exception {
+        night.transactionId = application.reservationService.book(night.bookingData);
+        return night.transactionId;
+    }
+}
@@ -0,0 +1,64 @@
+package com.upgrade.campsite.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationUtilsBenchmark {
+
+    @Param({"1", "30", "365"})
+    private int days;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    private Date date;
+
+    @Setup
+    public void setup() {
+        startDate = LocalDate.now().plusDays(1);
+        endDate = startDate.plusDays(days - 1);
+        date = ApplicationUtils.toDate(startDate);
+    }
+
+    @Benchmark
+    public Date toDate() {
+        return ApplicationUtils.toDate(startDate);
+    }
+
+    @Benchmark
+    public LocalDate toLocalDate() {
+        return ApplicationUtils.toLocalDate(date);
+    }
+
+    @Benchmark
+    public long toEpochDay() {
+        return ApplicationUtils.toEpochDay(date);
+    }
+
+    @Benchmark
+    public long iterateDateRange() {
+        final long[] sum = new long[1];
+        DateRange.of(startDate, endDate).forEachDay(day -> sum[0] += day);
+        return sum[0];
+    }
+}
@@ -0,0 +1,44 @@
+package com.upgrade.campsite.configuration;
+
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+
+/**
+ * Writes a date as its epoch day in a 4 byte big-endian int, instead of the Java serialization of LocalDate which takes
+ * eleven times the space and carries a class descriptor to resolve on every read.
+ *
+ * Values written with Java serialization by the previous versions are still read, so a cache written before the
+ * rollout keeps working until it is migrated.
+ */
+public class EpochDayRedisSerializer implements RedisSerializer<LocalDate> {
+
+    private final JdkSerializationRedisSerializer legacySerializer = new JdkSerializationRedisSerializer();
+
+    @Override
+    public byte[] serialize(final LocalDate date) throws SerializationException {
+        if (date == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(Integer.BYTES).putInt(Math.toIntExact(date.toEpochDay())).array();
+    }
+
+    @Override
+    public LocalDate deserialize(final byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length == Integer.BYTES) {
+            return LocalDate.ofEpochDay(ByteBuffer.wrap(bytes).getInt());
+        }
+        // a Java serialization stream is always longer than 4 bytes
+        final Object legacy = legacySerializer.deserialize(bytes);
+        if (!(legacy instanceof LocalDate)) {
+            throw new SerializationException("Cannot deserialize a " + legacy.getClass().getName() + " as a date");
+        }
+        return (LocalDate) legacy;
+    }
+}
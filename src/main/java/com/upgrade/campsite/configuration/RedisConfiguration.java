@@ -13,8 +13,10 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
 import java.time.LocalDate;
 
 @Configuration
@@ -26,9 +28,59 @@ public class RedisConfiguration {
     @Value("${spring.redis.host}")
     private String redisHost;
 
+    @Value("${spring.redis.timeout:2000}")
+    private Long commandTimeout;
+
+    @Value("${spring.redis.lettuce.pool.max-active:8}")
+    private Integer maxActive;
+
+    @Value("${spring.redis.lettuce.pool.max-idle:8}")
+    private Integer maxIdle;
+
+    @Value("${spring.redis.lettuce.pool.min-idle:0}")
+    private Integer minIdle;
+
+    @Value("${spring.redis.lettuce.pool.max-wait:-1}")
+    private Long maxWait;
+
+    /**
+     * Event loop threads, 0 keeping the Lettuce default of one per processor (at least 3).
+     */
+    @Value("${campsite.redis.io-threads:0}")
+    private Integer ioThreads;
+
+    @Value("${campsite.redis.computation-threads:0}")
+    private Integer computationThreads;
+
     @Bean(destroyMethod = "shutdown")
     public ClientResources clientResources() {
-        return DefaultClientResources.create();
+        final DefaultClientResources.Builder builder = DefaultClientResources.builder();
+        if (ioThreads > 0) {
+            builder.ioThreadPoolSize(ioThreads);
+        }
+        if (computationThreads > 0) {
+            builder.computationThreadPoolSize(computationThreads);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The pools register themselves in JMX under the {@link RedisPoolMetrics#JMX_NAME_PREFIX} prefix, where their
+     * statistics are read from. The idle connections are only topped up to min-idle by the evictor, which then runs
+     * every 30 seconds.
+     */
+    @Bean
+    public GenericObjectPoolConfig redisPoolConfig() {
+        final GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+        config.setMaxTotal(maxActive);
+        config.setMaxIdle(maxIdle);
+        config.setMinIdle(minIdle);
+        if (minIdle > 0) {
+            config.setTimeBetweenEvictionRunsMillis(30000);
+        }
+        config.setMaxWaitMillis(maxWait);
+        config.setJmxNamePrefix(RedisPoolMetrics.JMX_NAME_PREFIX);
+        return config;
     }
 
     @Bean
@@ -47,7 +99,8 @@ public class RedisConfiguration {
     @Bean
     public LettucePoolingClientConfiguration lettucePoolConfig(){
         return LettucePoolingClientConfiguration.builder()
-                .poolConfig(new GenericObjectPoolConfig())
+                .poolConfig(redisPoolConfig())
+                .commandTimeout(Duration.ofMillis(commandTimeout))
                 .clientOptions(clientOptions())
                 .clientResources(clientResources())
                 .build();
@@ -64,6 +117,14 @@ public class RedisConfiguration {
         RedisTemplate<String, LocalDate> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory());
         template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new EpochDayRedisSerializer());
         return template;
     }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory());
+        return container;
+    }
 }
@@ -0,0 +1,104 @@
+package com.upgrade.campsite.configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes the statistics of the Redis connection pools, read from the JMX beans commons-pool registers for them.
+ * Lettuce creates its pools on the first connection and may create more than one, so the meters of a pool are
+ * registered when its bean appears and removed with it, tagged with the name of the pool. The statistics of two pools
+ * are never combined: a mean borrow wait can not be derived from the means of the pools.
+ */
+@Slf4j
+@Component
+public class RedisPoolMetrics {
+
+    static final String JMX_NAME_PREFIX = "lettuce";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    private final Map<ObjectName, List<Meter>> meters = new ConcurrentHashMap<>();
+
+    @Autowired(required = true)
+    private MeterRegistry meterRegistry;
+
+    private NotificationListener listener;
+
+    @PostConstruct
+    public void init() throws JMException {
+        final ObjectName pools = new ObjectName("org.apache.commons.pool2:type=GenericObjectPool,name="
+                + JMX_NAME_PREFIX + "*");
+        listener = (notification, handback) -> {
+            final ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+            if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+                register(name);
+            } else {
+                unregister(name);
+            }
+        };
+        final NotificationFilter filter = notification -> notification instanceof MBeanServerNotification
+                && pools.apply(((MBeanServerNotification) notification).getMBeanName());
+        server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+        server.queryNames(pools, null).forEach(this::register);
+    }
+
+    @PreDestroy
+    public void shutdown() throws JMException {
+        server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
+    }
+
+    private void register(final ObjectName pool) {
+        final Tags tags = Tags.of("pool", pool.getKeyProperty("name"));
+        meters.computeIfAbsent(pool, name -> Arrays.asList(
+                gauge("campsite.redis.pool.active", name, "NumActive", tags),
+                gauge("campsite.redis.pool.idle", name, "NumIdle", tags),
+                gauge("campsite.redis.pool.waiters", name, "NumWaiters", tags),
+                gauge("campsite.redis.pool.borrow.wait.mean.millis", name, "MeanBorrowWaitTimeMillis", tags),
+                gauge("campsite.redis.pool.borrow.wait.max.millis", name, "MaxBorrowWaitTimeMillis", tags),
+                FunctionCounter.builder("campsite.redis.pool.created", this,
+                        metrics -> metrics.read(name, "CreatedCount")).tags(tags).register(meterRegistry)));
+    }
+
+    private void unregister(final ObjectName pool) {
+        final List<Meter> removed = meters.remove(pool);
+        if (removed != null) {
+            removed.forEach(meterRegistry::remove);
+        }
+    }
+
+    private Gauge gauge(final String meterName, final ObjectName pool, final String attribute, final Tags tags) {
+        return Gauge.builder(meterName, this, metrics -> metrics.read(pool, attribute)).tags(tags)
+                .register(meterRegistry);
+    }
+
+    private double read(final ObjectName pool, final String attribute) {
+        try {
+            return ((Number) server.getAttribute(pool, attribute)).doubleValue();
+        } catch (JMException e) {
+            // the pool was closed since the meter was read
+            log.debug("Could not read {} of {}", attribute, pool, e);
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.upgrade.campsite.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Times every call to the Spring Data repositories as campsite.repository.invocations, tagged with the repository, the
+ * method and the exception thrown, so each query has its own latency distribution.
+ *
+ * The registry is looked up on the first call, since a post processor created before it would keep the registry from
+ * being post processed itself.
+ */
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    @Autowired(required = true)
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            final Advised advised = (Advised) bean;
+            Arrays.stream(advised.getProxiedInterfaces())
+                    .filter(Repository.class::isAssignableFrom)
+                    .findFirst()
+                    .ifPresent(repository -> advised.addAdvice(0, new TimingInterceptor(repository.getSimpleName())));
+        }
+        return bean;
+    }
+
+    private final class TimingInterceptor implements MethodInterceptor {
+
+        private final String repository;
+
+        private TimingInterceptor(final String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(final MethodInvocation invocation) throws Throwable {
+            final MeterRegistry registry = meterRegistry.getObject();
+            final Timer.Sample sample = Timer.start(registry);
+            String exception = "none";
+            try {
+                return invocation.proceed();
+            } catch (Throwable e) {
+                exception = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                sample.stop(registry.timer("campsite.repository.invocations", "repository", repository,
+                        "method", invocation.getMethod().getName(), "exception", exception));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.upgrade.campsite.configuration;
+
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Reports the state of the availability cache as the reservationCache health component, with a single GET of the
+ * sentinel key.
+ *
+ * The application keeps working without the cache, reading the availability from the database, so a missing cache or
+ * an unreachable Redis is reported as DEGRADED rather than DOWN, which would take the instance out of service. Redis
+ * being down surfaces as a connection failure or, with a pool, as a failure to borrow a connection, so any failure of
+ * the read counts as unreachable.
+ */
+@Component
+public class ReservationCacheHealthIndicator implements HealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED");
+
+    @Autowired(required = true)
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Override
+    public Health health() {
+        final Long builtAt;
+        try {
+            builtAt = reservationCacheRepository.getBuiltAt();
+        } catch (RuntimeException e) {
+            return Health.status(DEGRADED).withDetail("availability", "database").withException(e).build();
+        }
+        if (builtAt == null) {
+            return Health.status(DEGRADED).withDetail("availability", "database")
+                    .withDetail("cache", "rebuilding").build();
+        }
+        return Health.up().withDetail("availability", "cache")
+                .withDetail("builtAt", Instant.ofEpochMilli(builtAt).toString())
+                .withDetail("ageSeconds", (System.currentTimeMillis() - builtAt) / 1000)
+                .build();
+    }
+}
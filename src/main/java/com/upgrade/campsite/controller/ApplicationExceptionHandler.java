@@ -2,6 +2,7 @@ package com.upgrade.campsite.controller;
 
 import com.upgrade.campsite.exception.AvailabilityException;
 import com.upgrade.campsite.exception.BookingDataException;
+import com.upgrade.campsite.exception.LockAcquisitionException;
 import com.upgrade.campsite.exception.ReservationNotFoundException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,4 +21,9 @@ public class ApplicationExceptionHandler {
     public ResponseEntity<String> handleBookingDataException(final Exception exception) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
     }
+
+    @ExceptionHandler(LockAcquisitionException.class)
+    public ResponseEntity<String> handleLockAcquisitionException(final LockAcquisitionException exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
 }
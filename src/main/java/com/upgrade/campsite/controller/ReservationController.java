@@ -3,13 +3,22 @@ package com.upgrade.campsite.controller;
 import com.upgrade.campsite.exception.AvailabilityException;
 import com.upgrade.campsite.exception.BookingDataException;
 import com.upgrade.campsite.exception.ReservationNotFoundException;
+import com.upgrade.campsite.presenter.AvailabilityBitmap;
+import com.upgrade.campsite.presenter.AvailabilityCalendar;
 import com.upgrade.campsite.presenter.AvailabilityData;
+import com.upgrade.campsite.presenter.AvailabilityRun;
 import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.presenter.BookingResult;
+import com.upgrade.campsite.service.AvailabilityFeed;
 import com.upgrade.campsite.service.ReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -18,9 +27,22 @@ import java.util.List;
 @RequestMapping("v1/reservation")
 public class ReservationController {
 
+    /**
+     * Availability as runs of consecutive nights which are all available or all booked.
+     */
+    public static final String AVAILABILITY_RUNS_VALUE = "application/vnd.campsite.availability-runs+json";
+
+    /**
+     * Availability as a base64 bitmap with one bit per night.
+     */
+    public static final String AVAILABILITY_BITMAP_VALUE = "application/vnd.campsite.availability-bitmap+json";
+
     @Autowired
     private ReservationService reservationService;
 
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
     @DeleteMapping("/{transactionid}")
     @ResponseStatus(value = HttpStatus.NO_CONTENT)
     public void deleteReservation(@PathVariable String transactionid) throws ReservationNotFoundException {
@@ -41,8 +63,69 @@ public class ReservationController {
         return reservationService.book(bookingData);
     }
 
+    /**
+     * Books a list of reservations at once and answers the outcome of each one, in the order they were sent.
+     */
+    @PostMapping(value = "batch", consumes = { MediaType.APPLICATION_JSON_VALUE })
+    public List<BookingResult> createReservations(@RequestBody List<BookingData> bookings)
+            throws AvailabilityException, BookingDataException {
+        return reservationService.bookAll(bookings);
+    }
+
     @GetMapping(value = "list-availability", produces = { MediaType.APPLICATION_JSON_VALUE })
-    public List<AvailabilityData> getAvailabilityData(@RequestParam String startDate, @RequestParam String finalDate) {
-        return reservationService.findCampsiteAvailability(LocalDate.parse(startDate), LocalDate.parse(finalDate));
+    public List<AvailabilityData> getAvailabilityData(@RequestParam String startDate, @RequestParam String finalDate,
+                                                      ServletWebRequest request) {
+        final AvailabilityCalendar calendar = reservationService.findCampsiteAvailabilityCalendar(
+                LocalDate.parse(startDate), LocalDate.parse(finalDate));
+        if (isNotModified(request, "days", calendar)) {
+            return null;
+        }
+        return calendar.toDays();
+    }
+
+    @GetMapping(value = "list-availability", produces = { AVAILABILITY_RUNS_VALUE })
+    public List<AvailabilityRun> getAvailabilityRuns(@RequestParam String startDate, @RequestParam String finalDate,
+                                                     ServletWebRequest request) {
+        final AvailabilityCalendar calendar = reservationService.findCampsiteAvailabilityCalendar(
+                LocalDate.parse(startDate), LocalDate.parse(finalDate));
+        if (isNotModified(request, "runs", calendar)) {
+            return null;
+        }
+        return calendar.toRuns();
+    }
+
+    @GetMapping(value = "list-availability", produces = { AVAILABILITY_BITMAP_VALUE })
+    public AvailabilityBitmap getAvailabilityBitmap(@RequestParam String startDate, @RequestParam String finalDate,
+                                                    ServletWebRequest request) {
+        final AvailabilityCalendar calendar = reservationService.findCampsiteAvailabilityCalendar(
+                LocalDate.parse(startDate), LocalDate.parse(finalDate));
+        if (isNotModified(request, "bitmap", calendar)) {
+            return null;
+        }
+        return calendar.toBitmap();
+    }
+
+    /**
+     * Streams the availability changes as server-sent events. A client reconnecting with Last-Event-ID receives the
+     * changes it missed, or a reset event when they are too old and the availability must be reloaded.
+     */
+    @GetMapping(value = "availability-feed", produces = { MediaType.TEXT_EVENT_STREAM_VALUE })
+    public SseEmitter getAvailabilityFeed(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return availabilityFeed.subscribe(lastEventId);
+    }
+
+    /**
+     * Sets the ETag of the availability, built from the version the calendar was read with and the response format,
+     * and answers 304 when it matches the If-None-Match header. Clients must revalidate before reusing a cached
+     * response. Without a version, while the availability is read from the database, the response carries no ETag.
+     */
+    private boolean isNotModified(final ServletWebRequest request, final String format,
+                                  final AvailabilityCalendar calendar) {
+        request.getResponse().setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        if (calendar.getVersion() == null) {
+            return false;
+        }
+        return request.checkNotModified(String.format("\"%s-%s\"", format, calendar.getVersion()));
     }
 }
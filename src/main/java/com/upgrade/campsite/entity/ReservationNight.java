@@ -0,0 +1,43 @@
+package com.upgrade.campsite.entity;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * One occupied night of a reservation. The unique constraint on the night is what prevents double bookings: a
+ * conflicting booking fails on its insert instead of relying on a range scan under serializable isolation.
+ */
+@EqualsAndHashCode
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "reservation_night")
+public class ReservationNight {
+
+    @Id
+    @GeneratedValue(generator = "reservation_night_id")
+    @GenericGenerator(name = "reservation_night_id", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "reservation_night_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo") })
+    private Long id;
+
+    @Column(unique = true, nullable = false)
+    private Date night;
+
+    @Column(nullable = false)
+    private Long reservationId;
+
+    public ReservationNight(final Date night, final Long reservationId) {
+        this.night = night;
+        this.reservationId = reservationId;
+    }
+}
@@ -0,0 +1,45 @@
+package com.upgrade.campsite.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Change of the booked nights, recorded in the same transaction as the reservation and applied to the cache by the
+ * outbox dispatcher once committed.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "reservation_outbox")
+public class ReservationOutboxEvent {
+
+    public enum Type {
+        BOOKED, RELEASED
+    }
+
+    /**
+     * Allocated one at a time and not by blocks, since the dispatcher applies the events in the order of their ids.
+     */
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    private Date startDate;
+
+    private Date endDate;
+
+    private Date createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (this.createdAt == null) {
+            this.createdAt = new Date();
+        }
+    }
+}
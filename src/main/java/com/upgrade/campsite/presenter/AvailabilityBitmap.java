@@ -0,0 +1,23 @@
+package com.upgrade.campsite.presenter;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Availability of a window as a base64 bitmap: bit i, counted from the most significant bit of the first byte, is set
+ * when the night startDate + i days is available.
+ */
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class AvailabilityBitmap {
+
+    private LocalDate startDate;
+
+    private LocalDate finalDate;
+
+    private String available;
+}
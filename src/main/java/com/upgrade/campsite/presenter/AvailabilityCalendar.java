@@ -0,0 +1,79 @@
+package com.upgrade.campsite.presenter;
+
+import com.upgrade.campsite.utils.DateRange;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Booked nights of a window, bit i standing for the night range.getFirstDay() + i, which can be presented one day at
+ * a time, as runs of nights or as a bitmap. The window is walked in order, so none of the formats needs sorting.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class AvailabilityCalendar {
+
+    private final DateRange range;
+
+    private final BitSet booked;
+
+    /**
+     * Tag of the cache content the nights were read from, null when they were read from the database.
+     */
+    private final String version;
+
+    public AvailabilityCalendar(final DateRange range, final BitSet booked) {
+        this(range, booked, null);
+    }
+
+    public AvailabilityCalendar(final DateRange range, final BitSet booked, final String version) {
+        this.range = range;
+        this.booked = booked;
+        this.version = version;
+    }
+
+    public List<AvailabilityData> toDays() {
+        final LocalDate startDate = range.getStartDate();
+        final List<AvailabilityData> days = new ArrayList<>(range.length());
+        for (int night = 0; night < range.length(); night++) {
+            days.add(AvailabilityData.builder().date(startDate.plusDays(night)).available(!booked.get(night)).build());
+        }
+        return days;
+    }
+
+    public List<AvailabilityRun> toRuns() {
+        final List<AvailabilityRun> runs = new ArrayList<>();
+        int from = 0;
+        while (from < range.length()) {
+            final boolean available = !booked.get(from);
+            int end = available ? booked.nextSetBit(from) : booked.nextClearBit(from);
+            if (end < 0 || end > range.length()) {
+                end = range.length();
+            }
+            runs.add(AvailabilityRun.builder()
+                    .from(LocalDate.ofEpochDay(range.getFirstDay() + from))
+                    .to(LocalDate.ofEpochDay(range.getFirstDay() + end - 1))
+                    .available(available).build());
+            from = end;
+        }
+        return runs;
+    }
+
+    public AvailabilityBitmap toBitmap() {
+        final byte[] bitmap = new byte[(range.length() + Byte.SIZE - 1) / Byte.SIZE];
+        for (int night = booked.nextClearBit(0); night < range.length(); night = booked.nextClearBit(night + 1)) {
+            bitmap[night / Byte.SIZE] |= 0x80 >>> (night % Byte.SIZE);
+        }
+        return AvailabilityBitmap.builder()
+                .startDate(range.getStartDate())
+                .finalDate(range.getEndDate())
+                .available(Base64.getEncoder().encodeToString(bitmap)).build();
+    }
+}
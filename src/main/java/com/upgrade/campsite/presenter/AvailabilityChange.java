@@ -0,0 +1,20 @@
+package com.upgrade.campsite.presenter;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Nights whose availability changed in one committed batch of bookings and cancellations, numbered by version.
+ */
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class AvailabilityChange {
+
+    private Long version;
+
+    private List<AvailabilityRun> nights;
+}
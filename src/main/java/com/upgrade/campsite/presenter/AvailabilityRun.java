@@ -0,0 +1,22 @@
+package com.upgrade.campsite.presenter;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Consecutive nights from one date to another, both inclusive, which are all available or all booked.
+ */
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class AvailabilityRun {
+
+    private LocalDate from;
+
+    private LocalDate to;
+
+    private Boolean available;
+}
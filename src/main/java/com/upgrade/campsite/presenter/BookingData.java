@@ -2,6 +2,7 @@ package com.upgrade.campsite.presenter;
 
 import com.upgrade.campsite.entity.Reservation;
 import com.upgrade.campsite.utils.ApplicationUtils;
+import com.upgrade.campsite.utils.DateRange;
 import lombok.*;
 
 import java.time.LocalDate;
@@ -33,4 +34,8 @@ public class BookingData {
         reservation.setEndDate(ApplicationUtils.toDate(this.getCheckOut()));
         return reservation;
     }
+
+    public DateRange toDateRange() {
+        return DateRange.of(this.getCheckIn(), this.getCheckOut());
+    }
 }
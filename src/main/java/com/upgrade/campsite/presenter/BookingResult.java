@@ -0,0 +1,20 @@
+package com.upgrade.campsite.presenter;
+
+import lombok.*;
+
+/**
+ * Outcome of one reservation of a batch: the transaction id when it was booked, the reason otherwise.
+ */
+@Builder
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class BookingResult {
+
+    private Boolean booked;
+
+    private String transactionId;
+
+    private String error;
+}
@@ -0,0 +1,126 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.exception.LockAcquisitionException;
+import com.upgrade.campsite.utils.DateRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lock provider shared by every campsite instance. Each night of the range is leased through its own Redis key, holding
+ * a random id of the owner and expiring on its own after the lease time, so a crashed node can not keep the nights
+ * locked forever.
+ *
+ * The lease is verified before the commit, but it can still expire between the check and the commit. The writes are
+ * not fenced: a booking racing an expired lease is refused by the unique night index of the database, not by the lock.
+ */
+@Repository
+@ConditionalOnProperty(name = "campsite.booking.lock.provider", havingValue = "redis")
+public class RedisReservationLockRepository implements ReservationLockRepository {
+
+    private static final String KEY_PREFIX = "reservations:lock:";
+
+    private static final long RETRY_INTERVAL_MILLIS = 10;
+
+    /**
+     * Leases every key only if none of them is held, so a range is either fully acquired or not at all.
+     */
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('exists', key) == 1 then return 0 end " +
+            "end " +
+            "for i, key in ipairs(KEYS) do " +
+            "  redis.call('set', key, ARGV[1], 'PX', ARGV[2]) " +
+            "end " +
+            "return 1", Long.class);
+
+    private static final RedisScript<Long> HELD = new DefaultRedisScript<>(
+            "local held = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('get', key) == ARGV[1] then held = held + 1 end " +
+            "end " +
+            "return held", Long.class);
+
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "local released = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('get', key) == ARGV[1] then " +
+            "    redis.call('del', key) " +
+            "    released = released + 1 " +
+            "  end " +
+            "end " +
+            "return released", Long.class);
+
+    @Autowired
+    private StringRedisTemplate template;
+
+    @Value("${campsite.booking.lock.lease-time:10000}")
+    private Long leaseTime;
+
+    @Value("${campsite.booking.lock.wait-time:5000}")
+    private Long waitTime;
+
+    @Override
+    public ReservationLock lock(final DateRange range) {
+        final List<String> keys = getKeys(range);
+        final String owner = UUID.randomUUID().toString();
+        final long deadline = System.currentTimeMillis() + waitTime;
+
+        while (template.execute(ACQUIRE, keys, owner, String.valueOf(leaseTime)) != 1L) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new LockAcquisitionException("The selected dates are being booked by another request, " +
+                        "please try again.");
+            }
+            try {
+                Thread.sleep(RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LockAcquisitionException("Interrupted while waiting for the selected dates.");
+            }
+        }
+        return new RedisReservationLock(keys, owner);
+    }
+
+    private List<String> getKeys(final DateRange range) {
+        final long first = Math.min(range.getFirstDay(), range.getLastDay());
+        final long last = Math.max(range.getFirstDay(), range.getLastDay());
+        final List<String> keys = new ArrayList<>();
+        for (long day = first; day <= last; day++) {
+            keys.add(KEY_PREFIX + day);
+        }
+        return keys;
+    }
+
+    private final class RedisReservationLock implements ReservationLock {
+
+        private final List<String> keys;
+
+        private final String owner;
+
+        private RedisReservationLock(final List<String> keys, final String owner) {
+            this.keys = keys;
+            this.owner = owner;
+        }
+
+        @Override
+        public void verify() {
+            final Long held = template.execute(HELD, keys, owner);
+            if (held == null || held != keys.size()) {
+                throw new LockAcquisitionException("The lease on the selected dates expired, please try again.");
+            }
+        }
+
+        @Override
+        public void close() {
+            template.execute(RELEASE, keys, owner);
+        }
+    }
+}
@@ -1,17 +1,62 @@
 package com.upgrade.campsite.repository;
 
-import java.time.LocalDate;
-import java.util.Set;
+import com.upgrade.campsite.utils.DateRange;
+
+import java.util.BitSet;
+import java.util.Iterator;
 
 public interface ReservationCacheRepository {
 
-    void addReservation(final LocalDate... dates);
+    /**
+     * Checks that every night of the range is free and books them, atomically for every node.
+     *
+     * @return true when the nights were claimed, false when one of them is already booked, null when the cache is not
+     * ready to check against
+     */
+    Boolean claimReservation(final DateRange range);
+
+    /**
+     * Books or releases the changed nights of the span in a single round trip. Bit i of changed and booked stands for
+     * the night span.getFirstDay() + i.
+     */
+    void updateReservations(final DateRange span, final BitSet changed, final BitSet booked);
+
+    void initializeCache(final DateRange... ranges);
+
+    /**
+     * Version of the cached nights, increased by every write.
+     */
+    long getVersion();
+
+    /**
+     * Streams the ranges into a temporary key in bounded batches, replays on it the writes made since the cache was at
+     * expectedVersion, and swaps it in place of the cache in one atomic step.
+     *
+     * @return false when some of those writes are not journaled anymore and nothing was swapped
+     */
+    boolean rebuildCache(final long expectedVersion, final Iterator<DateRange> ranges);
 
-    void removeReservation(final LocalDate... dates);
+    /**
+     * Converts the cache written by the previous versions, a set of dates under the same key, into the bitmap.
+     *
+     * @return false when the cache was not in the previous format
+     */
+    boolean migrateLegacyCache();
 
-    void initializeCache(final LocalDate... dates);
+    /**
+     * Time in milliseconds of the rebuild which swapped in the current bitmap, or null when the cache is not ready.
+     */
+    Long getBuiltAt();
 
-    Boolean isCacheInitialized();
+    /**
+     * Returns the booked nights of the range, bit i being set when the night range.getFirstDay() + i is booked, or null
+     * when the cache is not ready.
+     */
+    BitSet getReservations(final DateRange range);
 
-    Set<LocalDate> getReservations();
+    /**
+     * Same as {@link #getReservations(DateRange)}, with an opaque tag of the content the nights were read from, which
+     * changes whenever a booked night of the range may have changed. The tag is null for an empty range.
+     */
+    VersionedNights getVersionedReservations(final DateRange range);
 }
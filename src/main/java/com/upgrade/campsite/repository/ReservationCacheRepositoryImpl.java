@@ -1,66 +1,457 @@
 package com.upgrade.campsite.repository;
 
-import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+/**
+ * Stores the booked nights as a Redis bitmap: bit N of the key is set when the night EPOCH_DAY + N is booked, so a
+ * night costs one bit and a date range maps to a contiguous run of bytes.
+ *
+ * The bitmap is only trusted while the {@link #READY_KEY} sentinel exists. The sentinel is written by the swap of a
+ * rebuild and expires with the bitmap, so bits written to a missing or expired bitmap by the outbox dispatcher are
+ * never read as a complete cache.
+ *
+ * Every write also appends the nights it changed to a capped journal, numbered by the version it gave the cache, so
+ * a rebuild can replay the writes made while it was reading the database instead of starting over.
+ *
+ * The round trips of the booking and availability paths are timed as campsite.cache.redis, tagged with the command.
+ */
 @Repository
 public class ReservationCacheRepositoryImpl implements ReservationCacheRepository {
 
     private static final String KEY = "reservations";
 
+    private static final byte[] RAW_KEY = KEY.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Sentinel holding the time in milliseconds of the rebuild which swapped the current bitmap in.
+     */
+    private static final String READY_KEY = "reservations:ready";
+
+    private static final byte[] RAW_READY_KEY = READY_KEY.getBytes(StandardCharsets.UTF_8);
+
+    private static final String VERSION_KEY = "reservations:version";
+
+    private static final byte[] RAW_VERSION_KEY = VERSION_KEY.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Hash of month index to the number of writes which touched that month.
+     */
+    private static final String MONTH_VERSIONS_KEY = "reservations:month-versions";
+
+    private static final byte[] RAW_MONTH_VERSIONS_KEY = MONTH_VERSIONS_KEY.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Capped list of the latest writes, each stored as "version|runs", a run "first-last:bit" setting the bits from
+     * first to last.
+     */
+    private static final String JOURNAL_KEY = "reservations:journal";
+
+    private static final String REBUILD_KEY_PREFIX = "reservations:rebuild:";
+
+    private static final long EXPIRATION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Epoch day of the night stored at bit offset zero. Nights before it can not be booked anymore and are never
+     * cached.
+     */
+    static final long EPOCH_DAY = LocalDate.of(2019, 1, 1).toEpochDay();
+
+    /**
+     * Sets the bits of every run of ARGV[1] on KEYS[1].
+     */
+    private static final String APPLY_RUNS =
+            "local function apply(key, runs) " +
+            "  for first, last, bit in string.gmatch(runs, '(%d+)-(%d+):(%d)') do " +
+            "    for offset = tonumber(first), tonumber(last) do " +
+            "      redis.call('setbit', key, offset, tonumber(bit)) " +
+            "    end " +
+            "  end " +
+            "end ";
+
+    /**
+     * Bumps the version and the month versions (ARGV[3] and up), and journals the runs under the new version, keeping
+     * the latest ARGV[2] writes.
+     */
+    private static final String RECORD_WRITE =
+            "local function record(runs) " +
+            "  local version = redis.call('incr', KEYS[2]) " +
+            "  for i = 3, #ARGV do " +
+            "    redis.call('hincrby', KEYS[3], ARGV[i], 1) " +
+            "  end " +
+            "  redis.call('rpush', KEYS[4], version .. '|' .. runs) " +
+            "  redis.call('ltrim', KEYS[4], -tonumber(ARGV[2]), -1) " +
+            "end ";
+
+    /**
+     * Sets the bits of the runs of ARGV[1] only if none of them is set, and records the write like any other. Answers -1
+     * without writing anything when the cache is not ready, since a missing or partial bitmap would read as free
+     * nights.
+     */
+    private static final RedisScript<Long> CLAIM = new DefaultRedisScript<>(APPLY_RUNS + RECORD_WRITE +
+            "if redis.call('exists', KEYS[5]) == 0 then return -1 end " +
+            "for first, last in string.gmatch(ARGV[1], '(%d+)-(%d+)') do " +
+            "  for offset = tonumber(first), tonumber(last) do " +
+            "    if redis.call('getbit', KEYS[1], offset) == 1 then return 0 end " +
+            "  end " +
+            "end " +
+            "apply(KEYS[1], ARGV[1]) " +
+            "record(ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * Writes the runs of ARGV[1] and records the write, in one step, so a rebuild swapped in meanwhile can never drop
+     * nights written to the previous bitmap before they were journaled.
+     */
+    private static final RedisScript<Long> UPDATE = new DefaultRedisScript<>(APPLY_RUNS + RECORD_WRITE +
+            "apply(KEYS[1], ARGV[1]) " +
+            "record(ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * Replays on the rebuilt key KEYS[1] the journaled writes with a version above ARGV[1], and swaps it in place of
+     * the bitmap when ARGV[2] is 1, expiring both the bitmap and the sentinel at ARGV[3]. Answers the version replayed
+     * up to, or -1 when some of the writes are not in the journal anymore.
+     */
+    private static final RedisScript<Long> REPLAY = new DefaultRedisScript<>(APPLY_RUNS +
+            "local latest = tonumber(redis.call('get', KEYS[2]) or '0') " +
+            "local missed = latest - tonumber(ARGV[1]) " +
+            "if missed < 0 then return -1 end " +
+            "if missed > 0 then " +
+            "  local writes = redis.call('lrange', KEYS[3], -missed, -1) " +
+            "  if #writes ~= missed or tonumber(string.match(writes[1], '^(%d+)|')) ~= tonumber(ARGV[1]) + 1 then " +
+            "    return -1 " +
+            "  end " +
+            "  for _, write in ipairs(writes) do " +
+            "    apply(KEYS[1], string.sub(write, string.find(write, '|', 1, true) + 1)) " +
+            "  end " +
+            "end " +
+            "if ARGV[2] == '1' then " +
+            "  redis.call('rename', KEYS[1], KEYS[4]) " +
+            "  redis.call('pexpireat', KEYS[4], ARGV[3]) " +
+            "  redis.call('set', KEYS[5], ARGV[4]) " +
+            "  redis.call('pexpireat', KEYS[5], ARGV[3]) " +
+            "end " +
+            "return latest", Long.class);
+
     @Autowired
     private RedisTemplate<String, LocalDate> template;
 
+    @Autowired
+    private ReservationNearCache nearCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${campsite.cache.rebuild-batch-size:1000}")
+    private Integer batchSize;
+
+    @Value("${campsite.cache.journal-size:10000}")
+    private Integer journalSize;
+
+    @Override
+    public Boolean claimReservation(final DateRange range) {
+        final BitSet nights = new BitSet();
+        nights.set(0, range.length());
+        final String runs = toRuns(range, nights, nights);
+        final Long claimed = timed("claim", () -> write(CLAIM, runs, range));
+        if (claimed == -1) {
+            return null;
+        }
+        if (claimed == 1) {
+            nearCache.invalidate(range);
+        }
+        return claimed == 1;
+    }
+
+    @Override
+    public void updateReservations(final DateRange span, final BitSet changed, final BitSet booked) {
+        final String runs = toRuns(span, changed, booked);
+        timed("update", () -> write(UPDATE, runs, span));
+        nearCache.invalidate(span);
+    }
+
     @Override
-    @Transactional
-    public void addReservation(final LocalDate... dates) {
-        template.opsForSet().add(KEY, dates);
+    public BitSet getReservations(final DateRange range) {
+        final VersionedNights nights = getVersionedReservations(range);
+        return nights == null ? null : nights.getNights();
     }
 
+    /**
+     * Reads with GETRANGE only the bytes holding the nights of the range, so the payload grows with the window and not
+     * with the number of cached reservations. Whole months are loaded so they can be kept in the near cache, and the
+     * tag is built from the versions read in the same round trip, so it always matches the nights returned.
+     */
     @Override
-    @Transactional
-    public void removeReservation(final LocalDate... dates) {
-        template.opsForSet().remove(KEY, dates);
+    public VersionedNights getVersionedReservations(final DateRange range) {
+        if (range.isEmpty()) {
+            return new VersionedNights(new BitSet(), null);
+        }
+        final VersionedNights cached = nearCache.getReservations(range);
+        if (cached != null) {
+            return cached;
+        }
+        final DateRange months = DateRange.of(range.getStartDate().withDayOfMonth(1),
+                range.getEndDate().with(TemporalAdjusters.lastDayOfMonth()));
+        final VersionedNights loaded = readMonths(months);
+        if (loaded == null) {
+            return null;
+        }
+        final int offset = (int) (range.getFirstDay() - months.getFirstDay());
+        return new VersionedNights(loaded.getNights().get(offset, offset + range.length()), loaded.getVersionTag());
     }
 
     @Override
-    public Set<LocalDate> getReservations() {
-        return template.opsForSet().members(KEY);
+    public void initializeCache(final DateRange... ranges) {
+        final byte[] rebuildKey = loadRebuildKey(Arrays.asList(ranges).iterator());
+        template.execute((RedisCallback<List<Object>>) connection -> {
+            connection.multi();
+            swap(connection, rebuildKey);
+            return connection.exec();
+        });
+        nearCache.invalidateAll();
     }
 
     @Override
-    @Transactional
-    public void initializeCache(LocalDate... dates) {
-        template.delete(KEY);
-        addReservation(dates);
-        template.expire(KEY, 1, TimeUnit.DAYS);
+    public long getVersion() {
+        return template.execute((RedisCallback<Long>) connection -> readVersion(connection));
+    }
+
+    /**
+     * The writes journaled since expectedVersion are replayed on the rebuilt key a first time while the cache keeps
+     * being written, then the few made meanwhile are replayed in the same script as the swap, so no write is lost
+     * however busy the cache is.
+     */
+    @Override
+    public boolean rebuildCache(final long expectedVersion, final Iterator<DateRange> ranges) {
+        final String rebuildKey = new String(loadRebuildKey(ranges), StandardCharsets.UTF_8);
+        final long replayed = replay(rebuildKey, expectedVersion, false);
+        if (replayed < 0 || replay(rebuildKey, replayed, true) < 0) {
+            template.delete(rebuildKey);
+            return false;
+        }
+        nearCache.invalidateAll();
+        return true;
     }
 
+    /**
+     * The dates of the set are read through the value serializer of the template, which still decodes the Java
+     * serialization of the previous versions, and the bitmap is swapped in place of the set like a rebuild.
+     */
     @Override
-    @Transactional
-    public Boolean isCacheInitialized() {
-        Boolean b = template.hasKey(KEY);
-        if (b == null) {
-            template.hasKey(KEY);
-            System.out.println(template.getConnectionFactory().getConnection().keys(KEY.getBytes()));
-
-            template.afterPropertiesSet();
-            System.out.println(template.getConnectionFactory().getConnection().ping());
-            System.out.println(template.getConnectionFactory().getConnection().isClosed());
-            System.out.println(template.keys("*"));
-            template.opsForSet().add(KEY, LocalDate.now());
-            System.out.println(template.opsForSet().members(KEY));
-            template.opsForList().leftPush("TESTE", LocalDate.now());
-            System.out.println("template.opsForValue().get() = " + template.opsForList().size("TESTE"));
+    public boolean migrateLegacyCache() {
+        final DataType type = template.execute((RedisCallback<DataType>) connection -> connection.type(RAW_KEY));
+        if (type != DataType.SET) {
+            return false;
         }
-        return b;
+        final Set<LocalDate> dates = template.opsForSet().members(KEY);
+        initializeCache(dates.stream().map(date -> DateRange.of(date, date)).toArray(DateRange[]::new));
+        return true;
     }
 
+    @Override
+    public Long getBuiltAt() {
+        final byte[] builtAt = template.execute((RedisCallback<byte[]>) connection -> connection.get(RAW_READY_KEY));
+        return builtAt == null ? null : Long.valueOf(new String(builtAt, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the versions of the months and the sentinel in the same round trip as the nights, and answers null when
+     * the cache is not ready. The versions are read before the bits while the writers bump them after the bits, so the
+     * nights returned are at least as recent as their tag. The months read are kept in the near cache.
+     */
+    private VersionedNights readMonths(final DateRange months) {
+        final long generation = nearCache.getGeneration();
+        final byte[][] monthIndexes = ReservationNearCache.toMonthIndexes(months).stream()
+                .map(month -> toBytes(month))
+                .toArray(byte[][]::new);
+        final long firstOffset = Math.max(toOffset(months.getFirstDay()), 0);
+        final long lastOffset = toOffset(months.getLastDay());
+        final long firstByte = firstOffset / Byte.SIZE;
+        final long lastByte = lastOffset / Byte.SIZE;
+        final List<Object> replies = timed("read", () -> template.executePipelined(
+                (RedisCallback<Object>) connection -> {
+                    connection.hMGet(RAW_MONTH_VERSIONS_KEY, monthIndexes);
+                    connection.get(RAW_READY_KEY);
+                    if (lastOffset >= firstOffset) {
+                        connection.getRange(RAW_KEY, firstByte, lastByte);
+                    }
+                    return null;
+                }, null));
+        if (replies.get(1) == null) {
+            return null;
+        }
+        final List<Long> monthVersions = new ArrayList<>(monthIndexes.length);
+        ((List<?>) replies.get(0)).forEach(version -> monthVersions.add(version == null ? 0
+                : Long.parseLong(new String((byte[]) version, StandardCharsets.UTF_8))));
+        final long builtAt = Long.parseLong(new String((byte[]) replies.get(1), StandardCharsets.UTF_8));
+        final BitSet nights = lastOffset < firstOffset ? new BitSet()
+                : toNights((byte[]) replies.get(2), firstByte, months);
+
+        nearCache.put(months, nights, monthVersions, builtAt, generation);
+        return new VersionedNights(nights, VersionedNights.toVersionTag(builtAt, monthVersions));
+    }
+
+    private Long write(final RedisScript<Long> script, final String runs, final DateRange range) {
+        final List<String> args = new ArrayList<>();
+        args.add(runs);
+        args.add(String.valueOf(journalSize));
+        ReservationNearCache.toMonthIndexes(range).forEach(month -> args.add(String.valueOf(month)));
+        return template.execute(script, RedisSerializer.string(), new GenericToStringSerializer<>(Long.class),
+                Arrays.asList(KEY, VERSION_KEY, MONTH_VERSIONS_KEY, JOURNAL_KEY, READY_KEY), args.toArray());
+    }
+
+    private long replay(final String rebuildKey, final long fromVersion, final boolean swap) {
+        final long now = System.currentTimeMillis();
+        return template.execute(REPLAY, RedisSerializer.string(), new GenericToStringSerializer<>(Long.class),
+                Arrays.asList(rebuildKey, VERSION_KEY, JOURNAL_KEY, KEY, READY_KEY), String.valueOf(fromVersion),
+                swap ? "1" : "0", String.valueOf(now + EXPIRATION_MILLIS), String.valueOf(now));
+    }
+
+    /**
+     * Replaces the bitmap with the rebuilt key and marks the cache ready, both expiring at the same instant so the
+     * sentinel never outlives the bitmap.
+     */
+    private static void swap(final RedisConnection connection, final byte[] rebuildKey) {
+        final long expiresAt = System.currentTimeMillis() + EXPIRATION_MILLIS;
+        connection.rename(rebuildKey, RAW_KEY);
+        connection.pExpireAt(RAW_KEY, expiresAt);
+        connection.set(RAW_READY_KEY, toBytes(System.currentTimeMillis()));
+        connection.pExpireAt(RAW_READY_KEY, expiresAt);
+    }
+
+    /**
+     * Writes the ranges into a fresh temporary key, one pipelined round trip per batch of nights, so neither the client
+     * nor Redis ever hold more than a batch of nights. The first bit is always written so the key exists to be
+     * swapped in even when there is no reservation.
+     */
+    private byte[] loadRebuildKey(final Iterator<DateRange> ranges) {
+        final byte[] rebuildKey = (REBUILD_KEY_PREFIX + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        template.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setBit(rebuildKey, 0, false);
+            connection.pExpire(rebuildKey, EXPIRATION_MILLIS);
+            return null;
+        });
+        final List<DateRange> batch = new ArrayList<>();
+        int nights = 0;
+        while (ranges.hasNext()) {
+            final DateRange range = ranges.next();
+            batch.add(range);
+            nights += range.length();
+            if (nights >= batchSize || !ranges.hasNext()) {
+                template.executePipelined((RedisCallback<Object>) connection -> {
+                    batch.forEach(booked -> writeBits(connection, rebuildKey, true, booked));
+                    return null;
+                });
+                batch.clear();
+                nights = 0;
+            }
+        }
+        return rebuildKey;
+    }
+
+    /**
+     * Encodes the changed nights of the span as runs of equal bits, "first-last:bit" separated by commas, leaving out
+     * the nights before the first cached one.
+     */
+    static String toRuns(final DateRange span, final BitSet changed, final BitSet booked) {
+        final StringBuilder runs = new StringBuilder();
+        int night = changed.nextSetBit(0);
+        while (night >= 0) {
+            final boolean bit = booked.get(night);
+            int last = night;
+            while (changed.get(last + 1) && booked.get(last + 1) == bit) {
+                last++;
+            }
+            final long first = Math.max(toOffset(span.getFirstDay() + night), 0);
+            final long end = toOffset(span.getFirstDay() + last);
+            if (end >= first) {
+                runs.append(runs.length() == 0 ? "" : ",").append(first).append('-').append(end)
+                        .append(':').append(bit ? 1 : 0);
+            }
+            night = changed.nextSetBit(last + 1);
+        }
+        return runs.toString();
+    }
+
+    private static byte[] toBytes(final long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long readVersion(final RedisConnection connection) {
+        final byte[] version = connection.get(RAW_VERSION_KEY);
+        return version == null ? 0 : Long.parseLong(new String(version, StandardCharsets.UTF_8));
+    }
+
+    private static void writeBits(final RedisConnection connection, final byte[] key, final boolean booked,
+                                  final DateRange range) {
+        for (long day = range.getFirstDay(); day <= range.getLastDay(); day++) {
+            writeBit(connection, key, day, booked);
+        }
+    }
+
+    private static void writeBit(final RedisConnection connection, final byte[] key, final long day,
+                                 final boolean booked) {
+        final long offset = toOffset(day);
+        if (offset >= 0) {
+            connection.setBit(key, offset, booked);
+        }
+    }
+
+    private <T> T timed(final String command, final Supplier<T> call) {
+        return meterRegistry.timer("campsite.cache.redis", "command", command).record(call);
+    }
+
+    static long toOffset(final long day) {
+        return day - EPOCH_DAY;
+    }
+
+    /**
+     * Decodes the nights of the range flagged in a slice of the bitmap starting at the given byte index, bit i of the
+     * result standing for the night range.getFirstDay() + i. Redis numbers the bits of each byte from the most
+     * significant one.
+     */
+    static BitSet toNights(final byte[] bitmap, final long firstByte, final DateRange range) {
+        final BitSet nights = new BitSet(range.length());
+        if (bitmap == null) {
+            return nights;
+        }
+        for (int i = 0; i < bitmap.length; i++) {
+            final int bits = bitmap[i] & 0xFF;
+            if (bits == 0) {
+                continue;
+            }
+            for (int bit = 0; bit < Byte.SIZE; bit++) {
+                final long day = EPOCH_DAY + (firstByte + i) * Byte.SIZE + bit;
+                if ((bits & (0x80 >>> bit)) != 0 && range.contains(day)) {
+                    nights.set((int) (day - range.getFirstDay()));
+                }
+            }
+        }
+        return nights;
+    }
 }
@@ -0,0 +1,123 @@
+package com.upgrade.campsite.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Numbered log of the committed availability changes, shared by every node.
+ *
+ * Each change gets the next version, is appended to a capped Redis list and published on a channel in one script, so
+ * the versions are published in order and the list always holds the latest changes. Every node listens to the channel
+ * through the single subscription of the {@link RedisMessageListenerContainer} and hands the changes to its local
+ * listeners. A change is stored as "version|payload".
+ */
+@Repository
+public class ReservationChangeRepository implements MessageListener {
+
+    static final String CHANNEL = "reservations:availability";
+
+    private static final String VERSION_KEY = "reservations:availability:version";
+
+    private static final String HISTORY_KEY = "reservations:availability:history";
+
+    private static final RedisScript<Long> APPEND = new DefaultRedisScript<>(
+            "local version = redis.call('incr', KEYS[1]) " +
+            "local change = version .. '|' .. ARGV[1] " +
+            "redis.call('rpush', KEYS[2], change) " +
+            "redis.call('ltrim', KEYS[2], -tonumber(ARGV[2]), -1) " +
+            "redis.call('publish', ARGV[3], change) " +
+            "return version", Long.class);
+
+    @SuppressWarnings("unchecked")
+    private static final RedisScript<List<String>> CHANGES_SINCE = new DefaultRedisScript<>(
+            "local latest = tonumber(redis.call('get', KEYS[1]) or '0') " +
+            "local missed = math.min(latest - tonumber(ARGV[1]), tonumber(ARGV[2])) " +
+            "local changes = {} " +
+            "if missed > 0 then changes = redis.call('lrange', KEYS[2], -missed, -1) end " +
+            "table.insert(changes, 1, tostring(latest)) " +
+            "return changes", (Class<List<String>>) (Class<?>) List.class);
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private StringRedisTemplate template;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${campsite.feed.history-size:1000}")
+    private Integer historySize;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Appends the change to the log and publishes it to every node.
+     *
+     * @return the version of the change
+     */
+    public long append(final String payload) {
+        return template.execute(APPEND, Arrays.asList(VERSION_KEY, HISTORY_KEY), payload,
+                String.valueOf(historySize), CHANNEL);
+    }
+
+    public long getLatestVersion() {
+        final String version = template.opsForValue().get(VERSION_KEY);
+        return version == null ? 0 : Long.parseLong(version);
+    }
+
+    /**
+     * Returns the changes published after the given version, oldest first, or null when some of them are not kept
+     * anymore. Only the missed changes are read, from the tail of the list, in the same script as the latest version,
+     * so a client close to the head costs a few entries and not the whole history.
+     */
+    public List<String> getChangesSince(final long version) {
+        final List<String> reply = template.execute(CHANGES_SINCE, Arrays.asList(VERSION_KEY, HISTORY_KEY),
+                String.valueOf(version), String.valueOf(historySize));
+        final long missed = Long.parseLong(reply.get(0)) - version;
+        final List<String> changes = new ArrayList<>(reply.subList(1, reply.size()));
+        if (missed <= 0) {
+            return changes;
+        }
+        if (changes.size() != missed || getVersion(changes.get(0)) != version + 1) {
+            return null;
+        }
+        return changes;
+    }
+
+    public void addListener(final Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+        final String change = new String(message.getBody(), StandardCharsets.UTF_8);
+        listeners.forEach(listener -> listener.accept(change));
+    }
+
+    public static long getVersion(final String change) {
+        return Long.parseLong(change.substring(0, change.indexOf('|')));
+    }
+
+    public static String getPayload(final String change) {
+        return change.substring(change.indexOf('|') + 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.upgrade.campsite.repository;
+
+/**
+ * Lease on the nights of a date range, obtained from a {@link ReservationLockRepository}.
+ */
+public interface ReservationLock extends AutoCloseable {
+
+    /**
+     * Throws a {@link com.upgrade.campsite.exception.LockAcquisitionException} if the lease expired or was taken over,
+     * so the caller can roll back instead of committing writes it no longer owns.
+     */
+    void verify();
+
+    @Override
+    void close();
+}
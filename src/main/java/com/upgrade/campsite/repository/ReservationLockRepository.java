@@ -0,0 +1,8 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.utils.DateRange;
+
+public interface ReservationLockRepository {
+
+    ReservationLock lock(final DateRange range);
+}
@@ -0,0 +1,278 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process copy of the availability bitmap, kept as one int per month (bit N set when day N + 1 is booked) along
+ * with the version of the month and the build time of the bitmap read with it, so a hit answers the same version tag
+ * as the Redis read it came from.
+ *
+ * Every write on any node publishes the months it touched on a Redis channel and each node drops its copy of those
+ * months when the message arrives. Entries older than the configured staleness bound are reloaded even when no
+ * message was received, which bounds the damage of a lost message.
+ */
+@Component
+public class ReservationNearCache implements MessageListener {
+
+    static final String CHANNEL = "reservations:changes";
+
+    private static final byte[] RAW_CHANNEL = CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+    private static final String ALL_MONTHS = "*";
+
+    /**
+     * Identifies the messages published by this node, whose months were already dropped locally.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<Integer, MonthEntry> months = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped on every invalidation, so a load which raced with one does not store what it read.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    private RedisTemplate<String, LocalDate> template;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${campsite.cache.near.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${campsite.cache.near.max-staleness:5000}")
+    private Long maxStaleness;
+
+    @Value("${campsite.cache.near.max-months:120}")
+    private Integer maxMonths;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter invalidations;
+
+    private Timer invalidationLag;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("campsite.cache.near.requests", "result", "hit");
+        misses = meterRegistry.counter("campsite.cache.near.requests", "result", "miss");
+        invalidations = meterRegistry.counter("campsite.cache.near.invalidations");
+        invalidationLag = meterRegistry.timer("campsite.cache.near.invalidation.lag");
+        meterRegistry.gauge("campsite.cache.near.hit.ratio", this, ReservationNearCache::getHitRatio);
+        meterRegistry.gaugeMapSize("campsite.cache.near.months", Tags.empty(), months);
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Returns the booked nights of the range, bit i standing for the night range.getFirstDay() + i, or null when any
+     * month of the range is missing, too old or was read from another build of the bitmap.
+     */
+    public VersionedNights getReservations(final DateRange range) {
+        if (!enabled) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        final BitSet nights = new BitSet(range.length());
+        final List<Long> monthVersions = new ArrayList<>();
+        Long builtAt = null;
+        for (LocalDate month = range.getStartDate().withDayOfMonth(1); month.toEpochDay() <= range.getLastDay();
+             month = month.plusMonths(1)) {
+            final MonthEntry entry = months.get(toMonthIndex(month));
+            if (entry == null || now - entry.loadedAt > maxStaleness
+                    || (builtAt != null && builtAt != entry.builtAt)) {
+                misses.increment();
+                return null;
+            }
+            builtAt = entry.builtAt;
+            monthVersions.add(entry.version);
+            final long firstDay = month.toEpochDay();
+            for (int day = 0; day < month.lengthOfMonth(); day++) {
+                if ((entry.bits & (1 << day)) != 0 && range.contains(firstDay + day)) {
+                    nights.set((int) (firstDay + day - range.getFirstDay()));
+                }
+            }
+        }
+        hits.increment();
+        return new VersionedNights(nights, VersionedNights.toVersionTag(builtAt, monthVersions));
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores the booked nights of whole months, as read from Redis when the cache was at the given generation, with
+     * the version of each month and the build time of the bitmap read in the same round trip. The range starts on the
+     * first day of a month and ends on the last day of a month, bit i of the nights standing for the night
+     * loadedMonths.getFirstDay() + i. Nothing is stored if an invalidation happened meanwhile.
+     *
+     * At most campsite.cache.near.max-months are kept: a load wider than the bound only stores its first months, the
+     * nearest ones being the most read, and the other months are dropped as needed to make room for the load.
+     */
+    public void put(final DateRange loadedMonths, final BitSet nights, final List<Long> monthVersions,
+                    final long builtAt, final long loadedGeneration) {
+        if (!enabled) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Map<Integer, MonthEntry> loaded = new HashMap<>();
+        int index = 0;
+        for (LocalDate month = loadedMonths.getStartDate(); month.toEpochDay() <= loadedMonths.getLastDay()
+                && loaded.size() < maxMonths; month = month.plusMonths(1)) {
+            final int offset = (int) (month.toEpochDay() - loadedMonths.getFirstDay());
+            int bits = 0;
+            for (int day = 0; day < month.lengthOfMonth(); day++) {
+                if (nights.get(offset + day)) {
+                    bits |= 1 << day;
+                }
+            }
+            loaded.put(toMonthIndex(month), new MonthEntry(bits, monthVersions.get(index++), builtAt, now));
+        }
+
+        if (months.size() + loaded.size() > maxMonths) {
+            months.clear();
+        }
+        months.putAll(loaded);
+        // concurrent loads may each have made room for their own months only
+        months.keySet().removeIf(month -> months.size() > maxMonths && !loaded.containsKey(month));
+        if (generation.get() != loadedGeneration) {
+            loaded.keySet().forEach(months::remove);
+        }
+    }
+
+    /**
+     * Drops the months of the range on this node and tells every other node to do the same.
+     */
+    public void invalidate(final DateRange range) {
+        if (range.isEmpty()) {
+            return;
+        }
+        final Set<Integer> changedMonths = new HashSet<>(toMonthIndexes(range));
+        evict(changedMonths);
+        final StringJoiner payload = new StringJoiner(",");
+        changedMonths.forEach(month -> payload.add(String.valueOf(month)));
+        publish(payload.toString());
+    }
+
+    /**
+     * Drops every month on every node, used when the whole cache is rebuilt.
+     */
+    public void invalidateAll() {
+        evict(null);
+        publish(ALL_MONTHS);
+    }
+
+    @Override
+    public void onMessage(final Message message, final byte[] pattern) {
+        final String[] body = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|");
+        if (nodeId.equals(body[0])) {
+            return;
+        }
+        final long publishedAt = Long.parseLong(body[1]);
+        final String payload = body[2];
+
+        if (ALL_MONTHS.equals(payload)) {
+            evict(null);
+        } else {
+            final Set<Integer> changedMonths = new HashSet<>();
+            for (final String month : payload.split(",")) {
+                changedMonths.add(Integer.valueOf(month));
+            }
+            evict(changedMonths);
+        }
+        invalidations.increment();
+        invalidationLag.record(Math.max(System.currentTimeMillis() - publishedAt, 0), TimeUnit.MILLISECONDS);
+    }
+
+    public double getHitRatio() {
+        final double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private void evict(final Set<Integer> changedMonths) {
+        generation.incrementAndGet();
+        if (changedMonths == null) {
+            months.clear();
+        } else {
+            changedMonths.forEach(months::remove);
+        }
+    }
+
+    private void publish(final String payload) {
+        final byte[] message = (nodeId + "|" + System.currentTimeMillis() + "|" + payload)
+                .getBytes(StandardCharsets.UTF_8);
+        template.execute((RedisCallback<Long>) connection -> connection.publish(RAW_CHANNEL, message));
+    }
+
+    static int toMonthIndex(final LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * Indexes of the months overlapping the range, in ascending order.
+     */
+    static List<Integer> toMonthIndexes(final DateRange range) {
+        final List<Integer> monthIndexes = new ArrayList<>();
+        if (range.isEmpty()) {
+            return monthIndexes;
+        }
+        for (LocalDate month = range.getStartDate().withDayOfMonth(1); month.toEpochDay() <= range.getLastDay();
+             month = month.plusMonths(1)) {
+            monthIndexes.add(toMonthIndex(month));
+        }
+        return monthIndexes;
+    }
+
+    private static final class MonthEntry {
+
+        private final int bits;
+
+        private final long version;
+
+        private final long builtAt;
+
+        private final long loadedAt;
+
+        private MonthEntry(final int bits, final long version, final long builtAt, final long loadedAt) {
+            this.bits = bits;
+            this.version = version;
+            this.builtAt = builtAt;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
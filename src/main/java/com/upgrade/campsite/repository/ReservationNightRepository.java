@@ -0,0 +1,27 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.entity.ReservationNight;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ReservationNightRepository extends JpaRepository<ReservationNight, Long> {
+
+    @Modifying
+    @Query("Delete from ReservationNight n where n.reservationId = ?1")
+    int deleteByReservationId(final Long reservationId);
+
+    @Modifying
+    @Query("Delete from ReservationNight n where n.reservationId in ?1")
+    int deleteByReservationIds(final List<Long> reservationIds);
+
+    @Query("Select n.night from ReservationNight n where n.night between ?1 and ?2")
+    List<Date> findNights(final Date firstNight, final Date lastNight);
+
+    @Modifying
+    @Query("Delete from ReservationNight n where n.reservationId = ?1 and n.night between ?2 and ?3")
+    int deleteNights(final Long reservationId, final Date firstNight, final Date lastNight);
+}
@@ -0,0 +1,24 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.entity.ReservationOutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import javax.persistence.LockModeType;
+import java.util.Date;
+import java.util.List;
+
+public interface ReservationOutboxRepository extends CrudRepository<ReservationOutboxEvent, Long> {
+
+    /**
+     * Oldest pending events, locked until the end of the transaction so two nodes never dispatch the same events.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("Select e from ReservationOutboxEvent e order by e.id")
+    List<ReservationOutboxEvent> findPending(final Pageable pageable);
+
+    @Query("Select min(e.createdAt) from ReservationOutboxEvent e")
+    Date findOldestCreatedAt();
+}
@@ -0,0 +1,15 @@
+package com.upgrade.campsite.repository;
+
+import java.util.Date;
+
+/**
+ * Projection with only the columns needed to know which nights a reservation occupies.
+ */
+public interface ReservationPeriod {
+
+    Long getId();
+
+    Date getStartDate();
+
+    Date getEndDate();
+}
@@ -1,8 +1,11 @@
 package com.upgrade.campsite.repository;
 
 import com.upgrade.campsite.entity.Reservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Date;
 import java.util.List;
@@ -12,11 +15,41 @@ public interface ReservationRepository extends CrudRepository<Reservation, Strin
 
     Optional<Reservation> findById(final String id);
 
-    @Query("Select count(r) from Reservation r where r.endDate >= ?1  and r.startDate <= ?2 and (?3 is null or r.transactionId <> ?3)")
-    Long countOverlapReservations(final Date checkIn, final Date checkOut, final String transactionId);
-
-    @Query("Select r from Reservation r where r.startDate >= CURRENT_DATE")
-    List<Reservation> findNotExpiredReservations();
+    /**
+     * Keyset pagination over the reservations which still have nights to come: returns the next page of reservations
+     * with an id greater than lastId.
+     */
+    @Query("Select r.id as id, r.startDate as startDate, r.endDate as endDate from Reservation r " +
+            "where r.endDate >= CURRENT_DATE and r.id > ?1 order by r.id")
+    List<ReservationPeriod> findNotExpiredPeriods(final Long lastId, final Pageable pageable);
 
     Optional<Reservation> findByTransactionId(final String transactionId);
+
+    /**
+     * Reads only the id and the dates of the reservation, without loading and tracking the entity.
+     */
+    Optional<ReservationPeriod> findPeriodByTransactionId(final String transactionId);
+
+    @Modifying
+    @Query("Delete from Reservation r where r.transactionId = ?1")
+    int deleteByTransactionId(final String transactionId);
+
+    @Query("Select r.id from Reservation r where r.endDate < CURRENT_DATE order by r.id")
+    List<Long> findExpiredIds(final Pageable pageable);
+
+    @Query("Select min(r.endDate) from Reservation r where r.endDate < CURRENT_DATE")
+    Date findOldestExpiredEndDate();
+
+    /**
+     * Copies the reservations into the reservation_archive table, which is not mapped as an entity.
+     */
+    @Modifying
+    @Query(value = "insert into reservation_archive (id, transaction_id, name, email, start_date, end_date, " +
+            "archived_at) select id, transaction_id, name, email, start_date, end_date, current_timestamp " +
+            "from reservation where id in (:ids)", nativeQuery = true)
+    int copyToArchive(@Param("ids") final List<Long> ids);
+
+    @Modifying
+    @Query("Delete from Reservation r where r.id in ?1")
+    int deleteByIds(final List<Long> ids);
 }
\ No newline at end of file
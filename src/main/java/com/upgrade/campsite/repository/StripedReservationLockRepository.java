@@ -0,0 +1,35 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.utils.DateRange;
+import com.upgrade.campsite.utils.DateRangeLocker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * In-JVM lock provider. Only guards the bookings of this node, which is enough for a single instance deployment.
+ */
+@Repository
+@ConditionalOnProperty(name = "campsite.booking.lock.provider", havingValue = "local", matchIfMissing = true)
+public class StripedReservationLockRepository implements ReservationLockRepository {
+
+    @Autowired
+    private DateRangeLocker dateRangeLocker;
+
+    @Override
+    public ReservationLock lock(final DateRange range) {
+        dateRangeLocker.lock(range);
+        return new ReservationLock() {
+
+            @Override
+            public void verify() {
+                // the stripes are held until close, a local lease can not be lost
+            }
+
+            @Override
+            public void close() {
+                dateRangeLocker.unlock(range);
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.upgrade.campsite.repository;
+
+import lombok.Getter;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Booked nights of a range together with the tag of the cache content they were read from, so a response and its
+ * ETag always describe the same nights.
+ */
+@Getter
+public final class VersionedNights {
+
+    private final BitSet nights;
+
+    private final String versionTag;
+
+    VersionedNights(final BitSet nights, final String versionTag) {
+        this.nights = nights;
+        this.versionTag = versionTag;
+    }
+
+    /**
+     * Joins the time the bitmap was built and the version of every month of the range. The month versions restart
+     * from zero when Redis loses its data, the rebuild which follows changes the build time, so a tag never comes back
+     * with different nights.
+     */
+    static String toVersionTag(final long builtAt, final List<Long> monthVersions) {
+        final StringJoiner tag = new StringJoiner("-");
+        tag.add(Long.toString(builtAt, Character.MAX_RADIX));
+        monthVersions.forEach(version -> tag.add(String.valueOf(version)));
+        return tag.toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.presenter.AvailabilityChange;
+import com.upgrade.campsite.presenter.AvailabilityRun;
+import com.upgrade.campsite.repository.ReservationChangeRepository;
+import com.upgrade.campsite.utils.DateRange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the committed availability changes to the connected clients as server-sent events.
+ *
+ * The node receives the changes once, from the subscription of the {@link ReservationChangeRepository}, and fans them
+ * out to its clients from a bounded pool of sender threads, so a slow client never holds the redis listener thread
+ * which also delivers the invalidations of the near cache. A client whose sends fall behind the pool is closed and
+ * resumes from the log when it reconnects. The id of every event is the version of the change, so a client reconnecting with Last-Event-ID
+ * first receives what it missed. A client too far behind receives a reset event and must reload the availability.
+ */
+@Slf4j
+@Component
+public class AvailabilityFeed {
+
+    static final String CHANGE_EVENT = "availability";
+
+    static final String READY_EVENT = "ready";
+
+    static final String RESET_EVENT = "reset";
+
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+    @Autowired(required = true)
+    private ReservationChangeRepository reservationChangeRepository;
+
+    @Value("${campsite.feed.timeout:1800000}")
+    private Long timeout;
+
+    @Value("${campsite.feed.sender-threads:4}")
+    private Integer senderThreads;
+
+    @Value("${campsite.feed.sender-queue-size:1000}")
+    private Integer senderQueueSize;
+
+    private ExecutorService sender;
+
+    @PostConstruct
+    public void init() {
+        sender = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(senderQueueSize), runnable -> {
+                    final Thread thread = new Thread(runnable, "availability-feed-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        reservationChangeRepository.addListener(change -> {
+            final long version = ReservationChangeRepository.getVersion(change);
+            subscribers.forEach(subscriber -> subscriber.schedule(version, change));
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * Records the changed nights of the span, bit i of changed and booked standing for the night
+     * span.getFirstDay() + i, as one change of the feed. Consecutive nights with the same state are sent as one run.
+     */
+    public void publish(final DateRange span, final BitSet changed, final BitSet booked) {
+        final StringJoiner payload = new StringJoiner(";");
+        int from = changed.nextSetBit(0);
+        while (from >= 0) {
+            final boolean isBooked = booked.get(from);
+            int to = from;
+            while (changed.get(to + 1) && booked.get(to + 1) == isBooked) {
+                to++;
+            }
+            payload.add((span.getFirstDay() + from) + "," + (span.getFirstDay() + to) + "," + (isBooked ? 1 : 0));
+            from = changed.nextSetBit(to + 1);
+        }
+        if (payload.length() > 0) {
+            reservationChangeRepository.append(payload.toString());
+        }
+    }
+
+    /**
+     * Opens a stream of the changes published after lastVersion, or after the latest change when no version is given.
+     */
+    public SseEmitter subscribe(final Long lastVersion) {
+        final SseEmitter emitter = new SseEmitter(timeout);
+        final long latestVersion = reservationChangeRepository.getLatestVersion();
+        final Subscriber subscriber = new Subscriber(emitter, latestVersion);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        if (lastVersion == null) {
+            subscriber.send(SseEmitter.event().name(READY_EVENT).id(String.valueOf(latestVersion)).data(latestVersion));
+        } else if (lastVersion > latestVersion) {
+            subscriber.reset();
+        } else {
+            subscriber.catchUp(lastVersion);
+        }
+        return emitter;
+    }
+
+    /**
+     * Changes published after the given version, oldest first, or null when some of them are not kept anymore.
+     */
+    public List<AvailabilityChange> getChangesSince(final long version) {
+        final List<String> changes = reservationChangeRepository.getChangesSince(version);
+        if (changes == null) {
+            return null;
+        }
+        final List<AvailabilityChange> availabilityChanges = new ArrayList<>(changes.size());
+        changes.forEach(change -> availabilityChanges.add(toAvailabilityChange(change)));
+        return availabilityChanges;
+    }
+
+    private static AvailabilityChange toAvailabilityChange(final String change) {
+        final List<AvailabilityRun> nights = new ArrayList<>();
+        for (final String run : ReservationChangeRepository.getPayload(change).split(";")) {
+            final String[] fields = run.split(",");
+            nights.add(AvailabilityRun.builder()
+                    .from(LocalDate.ofEpochDay(Long.parseLong(fields[0])))
+                    .to(LocalDate.ofEpochDay(Long.parseLong(fields[1])))
+                    .available("0".equals(fields[2])).build());
+        }
+        return AvailabilityChange.builder().version(ReservationChangeRepository.getVersion(change))
+                .nights(nights).build();
+    }
+
+    /**
+     * A connected client and the version of the last change it received. Changes arrive from the subscription in no
+     * guaranteed order, so a change skipping versions first fetches the missing ones from the shared log and a change
+     * already sent is dropped.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private long lastVersion;
+
+        private Subscriber(final SseEmitter emitter, final long lastVersion) {
+            this.emitter = emitter;
+            this.lastVersion = lastVersion;
+        }
+
+        private void schedule(final long version, final String change) {
+            try {
+                sender.execute(() -> deliver(version, change));
+            } catch (RejectedExecutionException e) {
+                log.debug("Closing availability feed subscriber behind the sender queue");
+                subscribers.remove(this);
+                emitter.complete();
+            }
+        }
+
+        private synchronized void deliver(final long version, final String change) {
+            if (version <= lastVersion) {
+                return;
+            }
+            if (version > lastVersion + 1) {
+                catchUp(lastVersion);
+                return;
+            }
+            sendChange(toAvailabilityChange(change));
+        }
+
+        private synchronized void catchUp(final long fromVersion) {
+            lastVersion = fromVersion;
+            final List<AvailabilityChange> missed = getChangesSince(fromVersion);
+            if (missed == null) {
+                reset();
+                return;
+            }
+            missed.forEach(this::sendChange);
+        }
+
+        private synchronized void reset() {
+            lastVersion = reservationChangeRepository.getLatestVersion();
+            send(SseEmitter.event().name(RESET_EVENT).id(String.valueOf(lastVersion)).data(lastVersion));
+        }
+
+        private void sendChange(final AvailabilityChange change) {
+            if (change.getVersion() <= lastVersion) {
+                return;
+            }
+            lastVersion = change.getVersion();
+            send(SseEmitter.event().name(CHANGE_EVENT).id(String.valueOf(change.getVersion())).data(change));
+        }
+
+        private void send(final SseEmitter.SseEventBuilder event) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Dropping availability feed subscriber", e);
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Moves the reservations whose stay is over to the reservation_archive table and drops their nights, so the
+ * reservation table only holds the bookable horizon (from today up to the booking limit) however old the campsite is.
+ *
+ * Each batch is moved in its own short transaction and the archiver pauses between two batches, so a large backlog is
+ * worked off across runs without holding locks or competing with the bookings for long.
+ */
+@Slf4j
+@Component
+public class ReservationArchiver {
+
+    @Autowired(required = true)
+    private ReservationRepository reservationRepository;
+
+    @Autowired(required = true)
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired(required = true)
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = true)
+    private MeterRegistry meterRegistry;
+
+    @Value("${campsite.archive.batch-size:500}")
+    private Integer batchSize;
+
+    @Value("${campsite.archive.max-batches:100}")
+    private Integer maxBatches;
+
+    @Value("${campsite.archive.pause:100}")
+    private Long pause;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter archived;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        archived = meterRegistry.counter("campsite.archive.moved");
+        meterRegistry.gauge("campsite.archive.lag.seconds", reservationRepository, repository -> {
+            final Date oldest = repository.findOldestExpiredEndDate();
+            return oldest == null ? 0 : (System.currentTimeMillis() - oldest.getTime()) / 1000d;
+        });
+    }
+
+    @Scheduled(initialDelayString = "${campsite.archive.interval:3600000}",
+            fixedDelayString = "${campsite.archive.interval:3600000}")
+    public void archivePending() {
+        try {
+            archive();
+        } catch (RuntimeException e) {
+            log.warn("Could not archive the expired reservations", e);
+        }
+    }
+
+    /**
+     * Archives up to the configured number of batches and returns the number of reservations moved.
+     */
+    public int archive() {
+        int moved = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            final Integer count = transactionTemplate.execute(status -> archiveBatch());
+            moved += count;
+            if (count < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("Archived {} expired reservations", moved);
+        }
+        return moved;
+    }
+
+    private int archiveBatch() {
+        final List<Long> ids = reservationRepository.findExpiredIds(PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        reservationRepository.copyToArchive(ids);
+        reservationNightRepository.deleteByReservationIds(ids);
+        reservationRepository.deleteByIds(ids);
+        archived.increment(ids.size());
+        return ids.size();
+    }
+}
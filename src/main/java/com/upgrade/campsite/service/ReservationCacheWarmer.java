@@ -0,0 +1,181 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationPeriod;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds the availability cache from the database at startup, on a schedule and on demand, outside of the booking
+ * requests. Concurrent requests for a rebuild share the one in progress. Rebuilds are counted as
+ * campsite.cache.rebuilds, tagged with their result.
+ */
+@Slf4j
+@Component
+public class ReservationCacheWarmer {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final AtomicReference<CompletableFuture<Boolean>> inFlight = new AtomicReference<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "reservation-cache-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired(required = true)
+    private ReservationRepository reservationRepository;
+
+    @Autowired(required = true)
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired(required = true)
+    private MeterRegistry meterRegistry;
+
+    @Value("${campsite.cache.rebuild-page-size:500}")
+    private Integer pageSize;
+
+    /**
+     * Converts a cache left in the previous format before the web server starts, so no request reads it as a bitmap.
+     * A failed migration is not fatal, the rebuild started once the application is ready replaces the cache anyway.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        try {
+            if (reservationCacheRepository.migrateLegacyCache()) {
+                log.info("Migrated the reservation cache to the bitmap format");
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not migrate the reservation cache, it will be rebuilt", e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        warmUp();
+    }
+
+    @Scheduled(initialDelayString = "${campsite.cache.refresh-interval}",
+            fixedDelayString = "${campsite.cache.refresh-interval}")
+    public void refresh() {
+        warmUp();
+    }
+
+    /**
+     * Starts a rebuild unless one is already running, and returns the rebuild the caller can wait on. Completes with
+     * false if the cache was written more than its journal keeps during every attempt.
+     */
+    public CompletableFuture<Boolean> warmUp() {
+        while (true) {
+            final CompletableFuture<Boolean> current = inFlight.get();
+            if (current != null) {
+                return current;
+            }
+            final CompletableFuture<Boolean> rebuild = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, rebuild)) {
+                executor.execute(() -> run(rebuild));
+                return rebuild;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(final CompletableFuture<Boolean> rebuild) {
+        try {
+            final boolean swapped = rebuild();
+            countRebuild(swapped ? "swapped" : "gave-up");
+            inFlight.set(null);
+            rebuild.complete(swapped);
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the reservation cache", e);
+            countRebuild("failed");
+            inFlight.set(null);
+            rebuild.completeExceptionally(e);
+        }
+    }
+
+    private void countRebuild(final String result) {
+        meterRegistry.counter("campsite.cache.rebuilds", "result", result).increment();
+    }
+
+    /**
+     * The version is read before the database, so a booking committed after the read is either seen in the database
+     * or replayed from the journal of the cache before the swap. The rebuild only starts over when the journal did not
+     * keep every write made meanwhile.
+     */
+    private boolean rebuild() {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            final long version = reservationCacheRepository.getVersion();
+            if (reservationCacheRepository.rebuildCache(version, new BookedRanges())) {
+                return true;
+            }
+        }
+        log.warn("Reservation cache rebuild gave up after {} attempts, the cache changed more than its journal keeps", MAX_ATTEMPTS);
+        return false;
+    }
+
+    /**
+     * Iterates over the booked ranges of the reservations which are not expired, reading the database one page at a
+     * time, so only a page of reservations is held in memory however many there are.
+     */
+    private final class BookedRanges implements Iterator<DateRange> {
+
+        private final Deque<DateRange> ranges = new ArrayDeque<>();
+
+        private Long lastId = 0L;
+
+        private boolean exhausted;
+
+        @Override
+        public boolean hasNext() {
+            while (ranges.isEmpty() && !exhausted) {
+                fetchNextPage();
+            }
+            return !ranges.isEmpty();
+        }
+
+        @Override
+        public DateRange next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ranges.poll();
+        }
+
+        private void fetchNextPage() {
+            final List<ReservationPeriod> periods = reservationRepository.findNotExpiredPeriods(lastId,
+                    PageRequest.of(0, pageSize));
+            exhausted = periods.size() < pageSize;
+            periods.forEach(period -> {
+                ranges.add(DateRange.of(period.getStartDate(), period.getEndDate()));
+                lastId = period.getId();
+            });
+        }
+    }
+}
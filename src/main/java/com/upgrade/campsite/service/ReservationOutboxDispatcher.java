@@ -0,0 +1,172 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.entity.ReservationOutboxEvent;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationOutboxRepository;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies the committed {@link ReservationOutboxEvent}s to the availability cache, in batches and in the order they
+ * were recorded.
+ *
+ * Events are deleted in the transaction which dispatched them, so a failure leaves them in place to be retried with an
+ * increasing delay. Applying an event twice sets the same bits again, so a retry after a partial failure is harmless.
+ */
+@Slf4j
+@Component
+public class ReservationOutboxDispatcher {
+
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "reservation-outbox-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired(required = true)
+    private ReservationOutboxRepository reservationOutboxRepository;
+
+    @Autowired(required = true)
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired(required = true)
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired(required = true)
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = true)
+    private MeterRegistry meterRegistry;
+
+    @Value("${campsite.cache.outbox.batch-size:100}")
+    private Integer batchSize;
+
+    @Value("${campsite.cache.outbox.retry-delay:100}")
+    private Long retryDelay;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter dispatched;
+
+    private Counter failures;
+
+    private int consecutiveFailures;
+
+    private long nextAttemptAt;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        dispatched = meterRegistry.counter("campsite.cache.outbox.dispatched");
+        failures = meterRegistry.counter("campsite.cache.outbox.failures");
+        meterRegistry.gauge("campsite.cache.outbox.pending", reservationOutboxRepository,
+                repository -> repository.count());
+        meterRegistry.gauge("campsite.cache.outbox.lag.seconds", reservationOutboxRepository, repository -> {
+            final Date oldest = repository.findOldestCreatedAt();
+            return oldest == null ? 0 : (System.currentTimeMillis() - oldest.getTime()) / 1000d;
+        });
+    }
+
+    /**
+     * Dispatches in the background as soon as possible. Requests made while a dispatch is queued are merged into it.
+     */
+    public void requestDispatch() {
+        if (dispatchRequested.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                dispatchRequested.set(false);
+                dispatchPending();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${campsite.cache.outbox.interval:1000}")
+    public synchronized void dispatchPending() {
+        if (System.currentTimeMillis() < nextAttemptAt) {
+            return;
+        }
+        try {
+            dispatch();
+        } catch (RuntimeException e) {
+            failures.increment();
+            consecutiveFailures = Math.min(consecutiveFailures + 1, 16);
+            nextAttemptAt = System.currentTimeMillis() + Math.min(retryDelay << consecutiveFailures,
+                    MAX_BACKOFF_MILLIS);
+            log.warn("Could not dispatch the reservation outbox, retrying in {} ms",
+                    nextAttemptAt - System.currentTimeMillis(), e);
+        }
+    }
+
+    /**
+     * Applies every pending event to the cache before returning.
+     */
+    public synchronized void dispatch() {
+        Integer count;
+        do {
+            count = transactionTemplate.execute(status -> dispatchBatch());
+        } while (count != null && count == batchSize);
+        consecutiveFailures = 0;
+        nextAttemptAt = 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private int dispatchBatch() {
+        final List<ReservationOutboxEvent> events = reservationOutboxRepository.findPending(
+                PageRequest.of(0, batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        final List<DateRange> ranges = new ArrayList<>(events.size());
+        DateRange span = null;
+        for (final ReservationOutboxEvent event : events) {
+            final DateRange range = DateRange.of(event.getStartDate(), event.getEndDate());
+            ranges.add(range);
+            span = span == null ? range : span.span(range);
+        }
+        // the last event of a night wins, so a booking followed by its cancellation ends released
+        final BitSet changed = new BitSet(span.length());
+        final BitSet booked = new BitSet(span.length());
+        for (int i = 0; i < events.size(); i++) {
+            final DateRange range = ranges.get(i);
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int from = (int) (range.getFirstDay() - span.getFirstDay());
+            final int to = from + range.length();
+            changed.set(from, to);
+            booked.set(from, to, events.get(i).getType() == ReservationOutboxEvent.Type.BOOKED);
+        }
+
+        reservationCacheRepository.updateReservations(span, changed, booked);
+        availabilityFeed.publish(span, changed, booked);
+        reservationOutboxRepository.deleteAll(events);
+        dispatched.increment(events.size());
+        return events.size();
+    }
+}
@@ -3,8 +3,10 @@ package com.upgrade.campsite.service;
 import com.upgrade.campsite.exception.AvailabilityException;
 import com.upgrade.campsite.exception.BookingDataException;
 import com.upgrade.campsite.exception.ReservationNotFoundException;
+import com.upgrade.campsite.presenter.AvailabilityCalendar;
 import com.upgrade.campsite.presenter.AvailabilityData;
 import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.presenter.BookingResult;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -13,6 +15,12 @@ public interface ReservationService {
 
     String book(final BookingData bookingData) throws BookingDataException, AvailabilityException;
 
+    /**
+     * Books every valid reservation of the list whose nights are free, in one transaction, and returns the outcome of
+     * each one in the same order. A reservation conflicting with an earlier one of the list is refused.
+     */
+    List<BookingResult> bookAll(final List<BookingData> bookings) throws BookingDataException, AvailabilityException;
+
     void unBook(final String transactionId) throws ReservationNotFoundException;
 
     String modifyBook(final BookingData bookingData) throws ReservationNotFoundException, BookingDataException,
@@ -20,4 +28,10 @@ public interface ReservationService {
 
     List<AvailabilityData> findCampsiteAvailability(final LocalDate startDate, final LocalDate finalDate);
 
+    /**
+     * Availability between startDate and finalDate, with a version which changes whenever it may have changed, or
+     * without one when it was read from the database.
+     */
+    AvailabilityCalendar findCampsiteAvailabilityCalendar(final LocalDate startDate, final LocalDate finalDate);
+
 }
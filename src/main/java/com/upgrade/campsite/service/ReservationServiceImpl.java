@@ -1,39 +1,82 @@
 package com.upgrade.campsite.service;
 
 import com.upgrade.campsite.entity.Reservation;
+import com.upgrade.campsite.entity.ReservationNight;
+import com.upgrade.campsite.entity.ReservationOutboxEvent;
 import com.upgrade.campsite.exception.AvailabilityException;
 import com.upgrade.campsite.exception.BookingDataException;
 import com.upgrade.campsite.exception.ReservationNotFoundException;
+import com.upgrade.campsite.presenter.AvailabilityCalendar;
 import com.upgrade.campsite.presenter.AvailabilityData;
 import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.presenter.BookingResult;
 import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationLock;
+import com.upgrade.campsite.repository.ReservationLockRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationOutboxRepository;
+import com.upgrade.campsite.repository.ReservationPeriod;
 import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.repository.VersionedNights;
 import com.upgrade.campsite.utils.ApplicationUtils;
-import com.upgrade.campsite.utils.ResourceLocker;
-import org.apache.commons.collections4.CollectionUtils;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ReservationServiceImpl implements ReservationService {
 
+    private static final String NOT_AVAILABLE = "The selected dates is not available anymore.";
+
     @Autowired(required = true)
     private ReservationRepository reservationRepository;
 
+    @Autowired(required = true)
+    private ReservationNightRepository reservationNightRepository;
+
     @Autowired(required = true)
     private ReservationCacheRepository reservationCacheRepository;
 
+    @Autowired(required = true)
+    private ReservationLockRepository reservationLockRepository;
+
+    @Autowired(required = true)
+    private ReservationCacheWarmer reservationCacheWarmer;
+
+    @Autowired(required = true)
+    private ReservationOutboxRepository reservationOutboxRepository;
+
+    @Autowired(required = true)
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired(required = true)
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = true)
+    private MeterRegistry meterRegistry;
+
     @Value("${campsite.booking.max-stay}")
     private Long maxBookingDays;
 
@@ -43,113 +86,442 @@ public class ReservationServiceImpl implements ReservationService {
     @Value("${campsite.booking.month-limit-reservation}")
     private Long maxBookingLimit;
 
+    @Value("${campsite.booking.max-batch-size:100}")
+    private Integer maxBatchSize;
+
+    @Value("${campsite.booking.fast-path:false}")
+    private Boolean fastPath;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
+    @Transactional(isolation = Isolation.READ_COMMITTED, rollbackFor = Exception.class)
     public String book(final BookingData bookingData) throws BookingDataException, AvailabilityException {
+        validateBookingData(bookingData);
+        final DateRange range = bookingData.toDateRange();
+        if (fastPath && claimInCache(range)) {
+            final String transactionId = createReservation(bookingData);
+            recordOutboxEvent(ReservationOutboxEvent.Type.BOOKED, range);
+            return transactionId;
+        }
+        lockUntilCompletion(range, "book");
+        final String transactionId = createReservation(bookingData);
+        recordBooked(Collections.singletonList(range));
+        return transactionId;
+    }
+
+    /**
+     * The span of the batch is locked once and its booked nights are read in one query, so the conflicts against the
+     * database and within the batch are found in a single pass over a bitmap of the span. The accepted reservations,
+     * their nights and their outbox events are then inserted together.
+     *
+     * A booking claimed in the cache does not take the lock, its nights may still be uncommitted when the batch reads
+     * the span and then fail the inserts of the whole batch on the night index. The batch is rolled back and its
+     * accepted bookings are booked again one by one, each in its own transaction, so only the conflicting ones are
+     * refused.
+     */
+    @Override
+    public List<BookingResult> bookAll(final List<BookingData> bookings) throws BookingDataException,
+            AvailabilityException {
+        if (bookings.size() > maxBatchSize) {
+            throw new BookingDataException(String.format("At most %d reservations can be booked at once.",
+                    maxBatchSize));
+        }
+        final BookingResult[] results = new BookingResult[bookings.size()];
+        final DateRange[] ranges = new DateRange[bookings.size()];
+        DateRange span = null;
+        for (int i = 0; i < bookings.size(); i++) {
+            try {
+                validateBookingData(bookings.get(i));
+                ranges[i] = bookings.get(i).toDateRange();
+                span = span == null ? ranges[i] : span.span(ranges[i]);
+            } catch (BookingDataException e) {
+                results[i] = BookingResult.builder().booked(false).error(e.getMessage()).build();
+            }
+        }
+        if (span == null) {
+            return Arrays.asList(results);
+        }
+
+        final DateRange batchSpan = span;
+        final List<Integer> accepted = new ArrayList<>();
+        if (!transactionTemplate.execute(status -> saveBatch(bookings, ranges, batchSpan, results, accepted, status))) {
+            for (final int i : accepted) {
+                results[i] = transactionTemplate.execute(status -> saveBooking(bookings.get(i), ranges[i], status));
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return false when a night of an accepted booking was taken meanwhile, the transaction is then rolled back and
+     * the accepted bookings are left in accepted without a result
+     */
+    private boolean saveBatch(final List<BookingData> bookings, final DateRange[] ranges, final DateRange span,
+            final BookingResult[] results, final List<Integer> accepted, final TransactionStatus status) {
+        lockUntilCompletion(span, "batch");
+
+        final BitSet taken = findBookedNights(span);
+        final List<Reservation> reservations = new ArrayList<>();
+        for (int i = 0; i < bookings.size(); i++) {
+            if (ranges[i] == null) {
+                continue;
+            }
+            final int from = (int) (ranges[i].getFirstDay() - span.getFirstDay());
+            final int to = from + ranges[i].length();
+            if (!taken.get(from, to).isEmpty()) {
+                countConflict("database");
+                results[i] = BookingResult.builder().booked(false).error(NOT_AVAILABLE).build();
+                continue;
+            }
+            taken.set(from, to);
+            bookings.get(i).setTransactionId(null);
+            accepted.add(i);
+            reservations.add(bookings.get(i).toReservation());
+        }
+
+        reservationRepository.saveAll(reservations);
+        final List<ReservationNight> nights = new ArrayList<>();
+        final List<DateRange> bookedRanges = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            final Long reservationId = reservations.get(i).getId();
+            final DateRange range = ranges[accepted.get(i)];
+            range.forEachDay(night -> nights.add(new ReservationNight(ApplicationUtils.toDate(night), reservationId)));
+            bookedRanges.add(range);
+        }
+        try {
+            saveNights(nights);
+        } catch (AvailabilityException e) {
+            status.setRollbackOnly();
+            return false;
+        }
+        recordBooked(bookedRanges);
+        for (int i = 0; i < accepted.size(); i++) {
+            results[accepted.get(i)] = BookingResult.builder().booked(true)
+                    .transactionId(reservations.get(i).getTransactionId()).build();
+        }
+        return true;
+    }
+
+    private BookingResult saveBooking(final BookingData bookingData, final DateRange range,
+            final TransactionStatus status) {
+        lockUntilCompletion(range, "batch");
         try {
-            ResourceLocker.getInstance().lock();
-            validateBookingData(bookingData);
-            bookingData.setTransactionId(null);
-            final Reservation reservation = reservationRepository.save(bookingData.toReservation());
-            addReservationInCache(bookingData);
-            return reservation.getTransactionId();
-        } finally {
-            ResourceLocker.getInstance().unlock();
+            final String transactionId = createReservation(bookingData);
+            recordBooked(Collections.singletonList(range));
+            return BookingResult.builder().booked(true).transactionId(transactionId).build();
+        } catch (AvailabilityException e) {
+            status.setRollbackOnly();
+            return BookingResult.builder().booked(false).error(e.getMessage()).build();
         }
     }
 
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
+    @Transactional(isolation = Isolation.READ_COMMITTED, rollbackFor = Exception.class)
     public void unBook(String transactionId) throws ReservationNotFoundException {
-        try {
-            ResourceLocker.getInstance().lock();
-            final Reservation reservation = findReservation(transactionId);
-            reservationRepository.delete(reservation);
-            removeReservationFromCache(ApplicationUtils.toLocalDate(reservation.getStartDate()),
-                    ApplicationUtils.toLocalDate(reservation.getEndDate()));
-        } finally {
-            ResourceLocker.getInstance().unlock();
+        // the period read under the lock, so the nights released are the ones of a concurrent modification
+        final ReservationPeriod period = lockReservation(transactionId, findPeriod(transactionId), null, "unbook");
+        final DateRange range = DateRange.of(period.getStartDate(), period.getEndDate());
+        // bulk deletes, the reservation is never loaded in the persistence context
+        reservationNightRepository.deleteByReservationId(period.getId());
+        if (reservationRepository.deleteByTransactionId(transactionId) == 0) {
+            // cancelled by a concurrent request while this one waited for the lock
+            throw new ReservationNotFoundException();
         }
+        recordReleased(range);
     }
 
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
+    @Transactional(isolation = Isolation.READ_COMMITTED, rollbackFor = Exception.class)
     public String modifyBook(BookingData bookingData) throws ReservationNotFoundException, BookingDataException,
             AvailabilityException {
-        unBook(bookingData.getTransactionId());
-        final String transactionId = book(bookingData);
-        return transactionId;
+        // an unknown reservation is reported before invalid dates, and the nights are only locked once both are valid
+        final ReservationPeriod period = findPeriod(bookingData.getTransactionId());
+        validateBookingData(bookingData);
+        final DateRange requested = bookingData.toDateRange();
+        // locks the span covering both the current and the requested nights, so the move is seen as a single write
+        lockReservation(bookingData.getTransactionId(), period, requested, "modify");
+
+        // loaded under the lock, so the nights moved by a concurrent modification are the ones compared against
+        final Reservation reservation = findReservation(bookingData.getTransactionId());
+        final DateRange current = DateRange.of(reservation.getStartDate(), reservation.getEndDate());
+        // only the nights entering or leaving the reservation are written, the nights kept are left untouched
+        for (final DateRange released : current.minus(requested)) {
+            reservationNightRepository.deleteNights(reservation.getId(),
+                    ApplicationUtils.toDate(released.getFirstDay()), ApplicationUtils.toDate(released.getLastDay()));
+            recordReleased(released);
+        }
+        for (final DateRange added : requested.minus(current)) {
+            claimNights(reservation, added);
+            recordBooked(Collections.singletonList(added));
+        }
+        final Reservation modified = bookingData.toReservation();
+        reservation.setName(modified.getName());
+        reservation.setEmail(modified.getEmail());
+        reservation.setStartDate(modified.getStartDate());
+        reservation.setEndDate(modified.getEndDate());
+        return reservationRepository.save(reservation).getTransactionId();
     }
 
     @Override
     public List<AvailabilityData> findCampsiteAvailability(final LocalDate startDate, LocalDate finalDate) {
 
-        final Set<LocalDate> findRangeDates = ApplicationUtils.getDatesInRange(startDate, finalDate);
-        final Set<LocalDate> reservations = reservationCacheRepository.getReservations();
-        final List<AvailabilityData> campSiteAvailability = findRangeDates.stream().map( date -> {
-            boolean booked = !reservations.contains(date);
-            return AvailabilityData.builder().date(date).available(booked).build();
-        }).collect(Collectors.toList());
-        Collections.sort(campSiteAvailability);
-        return campSiteAvailability;
+        return findCampsiteAvailabilityCalendar(startDate, finalDate).toDays();
     }
 
-    private Reservation findReservation(final String transactionId) throws ReservationNotFoundException {
-        return reservationRepository.findByTransactionId(transactionId)
-                .orElseThrow(ReservationNotFoundException::new);
+    @Override
+    public AvailabilityCalendar findCampsiteAvailabilityCalendar(final LocalDate startDate, final LocalDate finalDate) {
+
+        final DateRange range = DateRange.of(startDate, finalDate);
+        meterRegistry.summary("campsite.availability.window.days").record(range.length());
+        final VersionedNights cached = findCachedNights(range);
+        if (cached == null) {
+            return new AvailabilityCalendar(range, findBookedNights(range));
+        }
+        return new AvailabilityCalendar(range, cached.getNights(), cached.getVersionTag());
     }
 
     /**
-     * Adds a reservation in cache
-     * @param bookingData
+     * Locks the nights of the reservation, and the requested ones when it is moved, until the transaction completes.
+     * The dates are read again once locked: a concurrent modification may have moved the reservation meanwhile, its
+     * new nights are then locked instead before anything is written. The lock is released right away when that read
+     * fails, its release is only tied to the transaction once the dates are confirmed.
+     *
+     * @param read the period of the reservation read before locking
+     * @return the period of the reservation as it is while the lock is held
      */
-    private void addReservationInCache(final BookingData bookingData) {
+    private ReservationPeriod lockReservation(final String transactionId, final ReservationPeriod read,
+            final DateRange requested, final String operation) throws ReservationNotFoundException {
+        ReservationPeriod period = read;
+        while (true) {
+            final DateRange current = DateRange.of(period.getStartDate(), period.getEndDate());
+            final ReservationLock lock = acquireLock(requested == null ? current : current.span(requested), operation);
+            final ReservationPeriod locked;
+            try {
+                locked = findPeriod(transactionId);
+            } catch (ReservationNotFoundException | RuntimeException e) {
+                lock.close();
+                throw e;
+            }
+            if (current.equals(DateRange.of(locked.getStartDate(), locked.getEndDate()))) {
+                holdUntilCompletion(lock, operation);
+                return locked;
+            }
+            lock.close();
+            period = locked;
+        }
+    }
 
-        if (!reservationCacheRepository.isCacheInitialized()) {
-            initializeCache();
+    /**
+     * Locks the nights until the transaction completes, so no other booking can check the same nights before this
+     * one is committed.
+     */
+    private void lockUntilCompletion(final DateRange range, final String operation) {
+        holdUntilCompletion(acquireLock(range, operation), operation);
+    }
+
+    /**
+     * The time spent waiting for the nights is published per operation as campsite.booking.lock.wait.
+     */
+    private ReservationLock acquireLock(final DateRange range, final String operation) {
+        final Timer.Sample wait = Timer.start(meterRegistry);
+        final ReservationLock lock = reservationLockRepository.lock(range);
+        wait.stop(meterRegistry.timer("campsite.booking.lock.wait", "operation", operation));
+        return lock;
+    }
+
+    /**
+     * The lease is verified right before the commit and a lost lease rolls the transaction back. The time the nights
+     * stay locked is published per operation as campsite.booking.lock.hold.
+     */
+    private void holdUntilCompletion(final ReservationLock lock, final String operation) {
+        final Timer hold = meterRegistry.timer("campsite.booking.lock.hold", "operation", operation);
+        final long lockedAt = System.nanoTime();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void beforeCommit(final boolean readOnly) {
+                lock.verify();
+            }
+
+            @Override
+            public void afterCompletion(final int status) {
+                lock.close();
+                hold.record(System.nanoTime() - lockedAt, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private String createReservation(final BookingData bookingData) throws AvailabilityException {
+        bookingData.setTransactionId(null);
+        final Reservation reservation = reservationRepository.save(bookingData.toReservation());
+        claimNights(reservation, bookingData.toDateRange());
+        return reservation.getTransactionId();
+    }
+
+    /**
+     * Claims the nights in the cache with one atomic script, so a conflict is refused without a lock and without
+     * touching the database, whichever node booked the nights. The database stays the durable record: a conflict it
+     * still detects rolls the booking back. The outbox event of the booking sets the same bits again once committed,
+     * so the cache converges even if a rebuild swapped the claim away meanwhile.
+     *
+     * Nights released by a cancellation stay claimed until its outbox event is dispatched, which only delays a new
+     * booking of those nights by the dispatch latency.
+     *
+     * @return false when the cache is not ready or can not be reached, the booking then takes the locked path
+     */
+    private boolean claimInCache(final DateRange range) throws AvailabilityException {
+        final Boolean claimed;
+        try {
+            claimed = reservationCacheRepository.claimReservation(range);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (claimed == null) {
+            reservationCacheWarmer.warmUp();
+            return false;
+        }
+        if (!claimed) {
+            countConflict("cache");
+            throw new AvailabilityException(NOT_AVAILABLE);
         }
-        final Set<LocalDate> datesToAdd = ApplicationUtils.getDatesInRange(bookingData.getCheckIn(),
-                bookingData.getCheckOut());
-        reservationCacheRepository.addReservation(datesToAdd.toArray(new LocalDate[0]));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(final int status) {
+                if (status != STATUS_COMMITTED) {
+                    resyncCache(range);
+                }
+            }
+        });
+        return true;
     }
 
     /**
-     * Remove from cache the reservation dates
+     * Inserts one row per night of the reservation. A night already taken by another reservation violates the unique
+     * constraint of the night index, so the conflict is detected by an indexed insert and not by a range scan.
      */
-    private void removeReservationFromCache(final LocalDate startDate, final LocalDate endDate) {
+    private void claimNights(final Reservation reservation, final DateRange range) throws AvailabilityException {
+        final List<ReservationNight> nights = new ArrayList<>(range.length());
+        range.forEachDay(night -> nights.add(new ReservationNight(ApplicationUtils.toDate(night),
+                reservation.getId())));
+        saveNights(nights);
+    }
 
-        final Set<LocalDate> dates = ApplicationUtils.getDatesInRange(startDate, endDate);
-        reservationCacheRepository.removeReservation(dates.toArray(new LocalDate[0]));
+    private void saveNights(final List<ReservationNight> nights) throws AvailabilityException {
+        try {
+            reservationNightRepository.saveAll(nights);
+            reservationNightRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            countConflict("database");
+            throw new AvailabilityException(NOT_AVAILABLE);
+        }
+    }
+
+    /**
+     * Counts the bookings refused because a night was already booked, by where the conflict was detected.
+     */
+    private void countConflict(final String detectedBy) {
+        meterRegistry.counter("campsite.booking.conflicts", "detected-by", detectedBy).increment();
+    }
+
+    /**
+     * Writes the nights of the range as the database has them, to undo a claim whose booking was rolled back. Clearing
+     * the claimed bits instead could erase a night meanwhile booked by a reservation committed on another node.
+     */
+    private void resyncCache(final DateRange range) {
+        final BitSet all = new BitSet(range.length());
+        all.set(0, range.length());
+        reservationCacheRepository.updateReservations(range, all, findBookedNights(range));
     }
 
     /**
-     * Method responsible to initialize the redis with booked dates stored in the database
+     * Reads the booked nights from the cache, or answers null so they are read from the database while the cache is
+     * not ready or Redis can not be reached, and the availability stays correct without Redis. Redis being down
+     * surfaces as a connection failure, or as a PoolException which is not a DataAccessException when the connections
+     * are pooled, so any failure of the cache falls back. Only a missing cache asks for a rebuild: with Redis down it
+     * would fail anyway, after reading every reservation.
      */
-    private void initializeCache() {
-        final Set<LocalDate> bookedDates = getBookedDates();
-        if (CollectionUtils.isNotEmpty(bookedDates)) {
-            reservationCacheRepository.initializeCache(bookedDates.toArray(new LocalDate[0]));
+    private VersionedNights findCachedNights(final DateRange range) {
+        try {
+            final VersionedNights nights = reservationCacheRepository.getVersionedReservations(range);
+            if (nights != null) {
+                return nights;
+            }
+            reservationCacheWarmer.warmUp();
+            countFallback("not-ready");
+        } catch (RuntimeException e) {
+            countFallback("unavailable");
         }
+        return null;
+    }
+
+    private void countFallback(final String reason) {
+        meterRegistry.counter("campsite.cache.fallbacks", "reason", reason).increment();
     }
 
     /**
-     * Method responsible find all booked dates which are not expired
+     * Nights of the range already booked, bit i standing for the night range.getFirstDay() + i.
      */
-    private Set<LocalDate> getBookedDates() {
-        final List<Reservation> reservations = reservationRepository.findNotExpiredReservations();
-        final Set<LocalDate> bookedDates = new HashSet<>();
-        reservations.forEach(reservation -> {
-            bookedDates.addAll(ApplicationUtils.getDatesInRange(reservation.getStartDate(), reservation.getEndDate()));
-        });
+    private BitSet findBookedNights(final DateRange range) {
+        final BitSet booked = new BitSet(range.length());
+        reservationNightRepository.findNights(ApplicationUtils.toDate(range.getFirstDay()),
+                ApplicationUtils.toDate(range.getLastDay()))
+                .forEach(night -> booked.set((int) (ApplicationUtils.toEpochDay(night) - range.getFirstDay())));
+        return booked;
+    }
+
+    private Reservation findReservation(final String transactionId) throws ReservationNotFoundException {
+        return reservationRepository.findByTransactionId(transactionId)
+                .orElseThrow(ReservationNotFoundException::new);
+    }
+
+    private ReservationPeriod findPeriod(final String transactionId) throws ReservationNotFoundException {
+        return reservationRepository.findPeriodByTransactionId(transactionId)
+                .orElseThrow(ReservationNotFoundException::new);
+    }
+
+    /**
+     * Records the booked nights in the outbox, in the same transaction as the reservation. A missing cache is noticed
+     * by the availability reads, which rebuild it in the background, so the booking itself never waits on Redis.
+     */
+    private void recordBooked(final List<DateRange> ranges) {
+        ranges.forEach(range -> recordOutboxEvent(ReservationOutboxEvent.Type.BOOKED, range));
+    }
 
-        return bookedDates;
+    /**
+     * Records the released nights in the outbox, in the same transaction as the cancellation.
+     */
+    private void recordReleased(final DateRange range) {
+        recordOutboxEvent(ReservationOutboxEvent.Type.RELEASED, range);
     }
 
-    private void validateBookingData(final BookingData bookingData) throws BookingDataException, AvailabilityException {
+    /**
+     * The cache is only written by the {@link ReservationOutboxDispatcher} after the commit, so Redis is off the
+     * booking path and a rolled back booking never reaches the cache. The dispatcher is woken up once committed.
+     */
+    private void recordOutboxEvent(final ReservationOutboxEvent.Type type, final DateRange range) {
+        final ReservationOutboxEvent event = new ReservationOutboxEvent();
+        event.setType(type);
+        event.setStartDate(ApplicationUtils.toDate(range.getFirstDay()));
+        event.setEndDate(ApplicationUtils.toDate(range.getLastDay()));
+        reservationOutboxRepository.save(event);
 
-        final Long bookingDays = ApplicationUtils.getBookingDays(bookingData.getCheckIn(),
-                bookingData.getCheckOut());
-        if (bookingDays > maxBookingDays) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                reservationOutboxDispatcher.requestDispatch();
+            }
+        });
+    }
+
+    private void validateBookingData(final BookingData bookingData) throws BookingDataException {
+
+        if (bookingData.toDateRange().length() > maxBookingDays) {
             throw new BookingDataException(String.format("The campsite only be booked up to %d days.", maxBookingDays));
         }
 
@@ -157,10 +529,6 @@ public class ReservationServiceImpl implements ReservationService {
             throw new BookingDataException(String.format("The campsite only be booked with a time limit of %d day " +
                     "ahead or up to %d month in advance.", minBookingLimit, maxBookingLimit));
         }
-
-        if (isSelectedDateUnavailable(bookingData)) {
-            throw new AvailabilityException("The selected dates is not available anymore.");
-        }
     }
 
     private Boolean isBookingOutOfLimit(final LocalDate checkIn) {
@@ -169,11 +537,4 @@ public class ReservationServiceImpl implements ReservationService {
         return lateBooking || earlyBooking;
     }
 
-    private Boolean isSelectedDateUnavailable(final BookingData bookingData) {
-        return this.reservationRepository.countOverlapReservations(
-                ApplicationUtils.toDate(bookingData.getCheckOut()),
-                ApplicationUtils.toDate(bookingData.getCheckIn()),
-                bookingData.getTransactionId()) > 0;
-    }
-
 }
\ No newline at end of file
@@ -2,14 +2,13 @@ package com.upgrade.campsite.utils;
 
 import java.time.LocalDate;
 import java.time.ZoneOffset;
-import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 public final class ApplicationUtils {
 
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
     public static Date toDate(final LocalDate date) {
         return Date.from(date.atStartOfDay().toInstant(ZoneOffset.UTC));
     }
@@ -18,20 +17,18 @@ public final class ApplicationUtils {
         return date.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
     }
 
-    public static Set<LocalDate> getDatesInRange(final LocalDate startDate, final LocalDate endDate) {
-        final Long numDays = getBookingDays(startDate, endDate);
-        return Stream
-                .iterate(startDate, date -> date.plusDays(1))
-                .limit(numDays)
-                .collect(Collectors.toSet());
-    }
-
-    public static Set<LocalDate> getDatesInRange(final Date startDate, final Date endDate) {
-        return getDatesInRange(toLocalDate(startDate), toLocalDate(endDate));
+    /**
+     * Midnight UTC of the epoch day, the same instant {@link #toDate(LocalDate)} returns for that day.
+     */
+    public static Date toDate(final long epochDay) {
+        return new Date(epochDay * MILLIS_PER_DAY);
     }
 
-    public static Long getBookingDays(final LocalDate startDate, final LocalDate endDate) {
-        return ChronoUnit.DAYS.between(startDate, endDate.plusDays(1));
+    /**
+     * Epoch day of the date in UTC, the same day {@link #toLocalDate(Date)} returns.
+     */
+    public static long toEpochDay(final Date date) {
+        return Math.floorDiv(date.getTime(), MILLIS_PER_DAY);
     }
 
 }
@@ -0,0 +1,99 @@
+package com.upgrade.campsite.utils;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Nights from firstDay to lastDay, both inclusive, held as epoch days. Iterating over a range walks a primitive counter,
+ * so the booking and cache code never creates a {@link LocalDate} per night.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class DateRange {
+
+    private final long firstDay;
+
+    private final long lastDay;
+
+    private DateRange(final long firstDay, final long lastDay) {
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+    }
+
+    public static DateRange ofEpochDays(final long firstDay, final long lastDay) {
+        return new DateRange(firstDay, lastDay);
+    }
+
+    public static DateRange of(final LocalDate startDate, final LocalDate endDate) {
+        return new DateRange(startDate.toEpochDay(), endDate.toEpochDay());
+    }
+
+    public static DateRange of(final Date startDate, final Date endDate) {
+        return new DateRange(ApplicationUtils.toEpochDay(startDate), ApplicationUtils.toEpochDay(endDate));
+    }
+
+    /**
+     * Number of nights of the range, zero when the last day is before the first one.
+     */
+    public int length() {
+        return (int) Math.max(lastDay - firstDay + 1, 0);
+    }
+
+    public boolean isEmpty() {
+        return lastDay < firstDay;
+    }
+
+    public boolean contains(final long day) {
+        return day >= firstDay && day <= lastDay;
+    }
+
+    /**
+     * Smallest range covering both this range and the other one.
+     */
+    public DateRange span(final DateRange other) {
+        return new DateRange(Math.min(firstDay, other.firstDay), Math.max(lastDay, other.lastDay));
+    }
+
+    /**
+     * Nights of this range which are not in the other one, as at most two ranges in ascending order.
+     */
+    public List<DateRange> minus(final DateRange other) {
+        final List<DateRange> remaining = new ArrayList<>(2);
+        if (isEmpty()) {
+            return remaining;
+        }
+        if (other.isEmpty() || other.lastDay < firstDay || other.firstDay > lastDay) {
+            remaining.add(this);
+            return remaining;
+        }
+        if (firstDay < other.firstDay) {
+            remaining.add(new DateRange(firstDay, other.firstDay - 1));
+        }
+        if (lastDay > other.lastDay) {
+            remaining.add(new DateRange(other.lastDay + 1, lastDay));
+        }
+        return remaining;
+    }
+
+    public void forEachDay(final LongConsumer action) {
+        for (long day = firstDay; day <= lastDay; day++) {
+            action.accept(day);
+        }
+    }
+
+    public LocalDate getStartDate() {
+        return LocalDate.ofEpochDay(firstDay);
+    }
+
+    public LocalDate getEndDate() {
+        return LocalDate.ofEpochDay(lastDay);
+    }
+}
@@ -0,0 +1,68 @@
+package com.upgrade.campsite.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock manager which guards booking writes per night instead of a single process-wide lock.
+ *
+ * Every night is mapped to one of a fixed number of lock stripes (epoch day modulo the stripe count). Locking a date
+ * range acquires only the stripes of the nights in that range, always in ascending stripe order, so two requests for
+ * non-overlapping dates can proceed in parallel and two requests for overlapping dates can never deadlock.
+ */
+@Component
+public class DateRangeLocker {
+
+    private final ReentrantLock[] stripes;
+
+    public DateRangeLocker(@Value("${campsite.booking.lock.stripes:64}") final int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("The number of lock stripes must be positive.");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Blocks until every stripe covering the nights of the range is held.
+     */
+    public void lock(final DateRange range) {
+        final boolean[] selected = selectStripes(range);
+        for (int i = 0; i < stripes.length; i++) {
+            if (selected[i]) {
+                stripes[i].lock();
+            }
+        }
+    }
+
+    /**
+     * Releases the stripes acquired by {@link #lock(DateRange)} for the same date range.
+     */
+    public void unlock(final DateRange range) {
+        final boolean[] selected = selectStripes(range);
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            if (selected[i]) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private boolean[] selectStripes(final DateRange range) {
+        final long first = Math.min(range.getFirstDay(), range.getLastDay());
+        final long last = Math.max(range.getFirstDay(), range.getLastDay());
+        final boolean[] selected = new boolean[stripes.length];
+        if (last - first + 1 >= stripes.length) {
+            Arrays.fill(selected, true);
+            return selected;
+        }
+        for (long day = first; day <= last; day++) {
+            selected[(int) Math.floorMod(day, (long) stripes.length)] = true;
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,37 @@
+-- schema previously created by hibernate (ddl-auto: create)
+
+create sequence reservation_sequence start with 1 increment by 50;
+
+create sequence reservation_night_sequence start with 1 increment by 50;
+
+create sequence hibernate_sequence start with 1 increment by 1;
+
+create table reservation (
+    id bigint not null,
+    transaction_id varchar(255),
+    name varchar(255),
+    email varchar(255),
+    start_date timestamp,
+    end_date timestamp,
+    primary key (id)
+);
+
+alter table reservation add constraint uk_reservation_transaction_id unique (transaction_id);
+
+create table reservation_night (
+    id bigint not null,
+    night timestamp not null,
+    reservation_id bigint not null,
+    primary key (id)
+);
+
+alter table reservation_night add constraint uk_reservation_night_night unique (night);
+
+create table reservation_outbox (
+    id bigint not null,
+    type varchar(255),
+    start_date timestamp,
+    end_date timestamp,
+    created_at timestamp,
+    primary key (id)
+);
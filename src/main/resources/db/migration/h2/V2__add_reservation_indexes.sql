@@ -0,0 +1,8 @@
+-- findNotExpiredReservations: start_date >= current_date
+create index idx_reservation_start_date on reservation (start_date);
+
+-- findNotExpiredPeriods: end_date >= current_date and id > ? order by id
+create index idx_reservation_end_date_id on reservation (end_date, id);
+
+-- deleteByReservationId and deleteNights: reservation_id = ? (and night between ? and ?)
+create index idx_reservation_night_reservation_id on reservation_night (reservation_id, night);
@@ -0,0 +1,7 @@
+-- no query filters on start_date anymore, the index only slowed the writes down
+drop index idx_reservation_start_date;
+
+-- the remaining indexes, checked by ReservationQueryPlanTest:
+--   idx_reservation_end_date_id: the ReservationArchiver lookups, findOldestExpiredEndDate and findExpiredIds; the
+--     keyset pages of the cache rebuild (findNotExpiredPeriods) walk the primary key instead
+--   idx_reservation_night_reservation_id: deleteByReservationId
@@ -0,0 +1,40 @@
+-- schema previously created by hibernate (ddl-auto: create)
+
+create table reservation_sequence (next_val bigint) engine=InnoDB;
+insert into reservation_sequence values (1);
+
+create table reservation_night_sequence (next_val bigint) engine=InnoDB;
+insert into reservation_night_sequence values (1);
+
+create table hibernate_sequence (next_val bigint) engine=InnoDB;
+insert into hibernate_sequence values (1);
+
+create table reservation (
+    id bigint not null,
+    transaction_id varchar(255),
+    name varchar(255),
+    email varchar(255),
+    start_date datetime(6),
+    end_date datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+alter table reservation add constraint uk_reservation_transaction_id unique (transaction_id);
+
+create table reservation_night (
+    id bigint not null,
+    night datetime(6) not null,
+    reservation_id bigint not null,
+    primary key (id)
+) engine=InnoDB;
+
+alter table reservation_night add constraint uk_reservation_night_night unique (night);
+
+create table reservation_outbox (
+    id bigint not null,
+    type varchar(255),
+    start_date datetime(6),
+    end_date datetime(6),
+    created_at datetime(6),
+    primary key (id)
+) engine=InnoDB;
@@ -0,0 +1,13 @@
+-- reservations whose stay is over, moved out of the reservation table by the ReservationArchiver
+create table reservation_archive (
+    id bigint not null,
+    transaction_id varchar(255),
+    name varchar(255),
+    email varchar(255),
+    start_date datetime(6),
+    end_date datetime(6),
+    archived_at datetime(6) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index idx_reservation_archive_transaction_id on reservation_archive (transaction_id);
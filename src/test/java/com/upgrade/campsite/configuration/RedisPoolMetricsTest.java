@@ -0,0 +1,41 @@
+package com.upgrade.campsite.configuration;
+
+import com.upgrade.campsite.CampsiteApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class RedisPoolMetricsTest {
+
+    @Autowired(required =  true)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required =  true)
+    private RedisTemplate<String, LocalDate> template;
+
+    @Test
+    public void testPoolStatisticsArePublishedPerPool() {
+        template.hasKey("reservations");
+
+        assertTrue(meterRegistry.get("campsite.redis.pool.created").functionCounter().count() >= 1);
+        assertTrue(meterRegistry.get("campsite.redis.pool.idle").gauge().value() >= 1);
+        assertEquals(0, meterRegistry.get("campsite.redis.pool.waiters").gauge().value(), 0);
+        assertTrue(meterRegistry.get("campsite.redis.pool.borrow.wait.max.millis").gauge().value() >= 0);
+        meterRegistry.get("campsite.redis.pool.borrow.wait.mean.millis").gauges()
+                .forEach(gauge -> assertNotNull(gauge.getId().getTag("pool")));
+    }
+}
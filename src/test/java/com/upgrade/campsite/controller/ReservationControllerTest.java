@@ -3,7 +3,12 @@ package com.upgrade.campsite.controller;
 import com.google.gson.*;
 import com.upgrade.campsite.CampsiteApplication;
 import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
 import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.service.ReservationCacheWarmer;
+import com.upgrade.campsite.service.ReservationOutboxDispatcher;
+import com.upgrade.campsite.utils.DateRange;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +16,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -23,14 +29,18 @@ import java.lang.reflect.Type;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(classes = CampsiteApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -48,6 +58,18 @@ public class ReservationControllerTest {
     @Autowired
     private ReservationRepository reservationRepository;
 
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired
+    private ReservationCacheWarmer reservationCacheWarmer;
+
     @Autowired
     private RedisTemplate<String, LocalDate> template;
 
@@ -60,7 +82,10 @@ public class ReservationControllerTest {
 
     @After
     public void after() throws Exception {
+        reservationOutboxDispatcher.dispatch();
+        reservationNightRepository.deleteAll();
         reservationRepository.deleteAll();
+        reservationCacheWarmer.warmUp().get();
         template.delete("reservations");
     }
 
@@ -161,6 +186,173 @@ public class ReservationControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testAvailabilityRuns() throws Exception {
+        bookAndDispatch(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+
+        mvc.perform(get(getAvailabilityPath(LocalDate.now().plusDays(1), LocalDate.now().plusDays(5)))
+                .accept(ReservationController.AVAILABILITY_RUNS_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().json(String.format("[" +
+                                "{\"from\":\"%s\",\"to\":\"%s\",\"available\":true}," +
+                                "{\"from\":\"%s\",\"to\":\"%s\",\"available\":false}," +
+                                "{\"from\":\"%s\",\"to\":\"%s\",\"available\":true}]",
+                        LocalDate.now().plusDays(1), LocalDate.now().plusDays(1),
+                        LocalDate.now().plusDays(2), LocalDate.now().plusDays(3),
+                        LocalDate.now().plusDays(4), LocalDate.now().plusDays(5)), true));
+    }
+
+    @Test
+    public void testAvailabilityBitmap() throws Exception {
+        bookAndDispatch(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+
+        // nights 1, 4 and 5 are available: 10011000
+        mvc.perform(get(getAvailabilityPath(LocalDate.now().plusDays(1), LocalDate.now().plusDays(5)))
+                .accept(ReservationController.AVAILABILITY_BITMAP_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().json(String.format(
+                        "{\"startDate\":\"%s\",\"finalDate\":\"%s\",\"available\":\"mA==\"}",
+                        LocalDate.now().plusDays(1), LocalDate.now().plusDays(5)), true));
+    }
+
+    @Test
+    public void testAvailabilityDefaultsToDays() throws Exception {
+        mvc.perform(get(getAvailabilityPath(LocalDate.now().plusDays(1), LocalDate.now().plusDays(2))))
+                .andExpect(status().isOk())
+                .andExpect(content().json(String.format(
+                        "[{\"date\":\"%s\",\"available\":true},{\"date\":\"%s\",\"available\":true}]",
+                        LocalDate.now().plusDays(1), LocalDate.now().plusDays(2)), true));
+    }
+
+    @Test
+    public void testAvailabilityNotModified() throws Exception {
+        final String path = getAvailabilityPath(LocalDate.now().plusDays(1), LocalDate.now().plusDays(5));
+        final String eTag = mvc.perform(get(path)).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        // a write to another month leaves the window untouched
+        final BitSet night = new BitSet();
+        night.set(0);
+        reservationCacheRepository.updateReservations(DateRange.of(LocalDate.now().plusDays(70),
+                LocalDate.now().plusDays(70)), night, night);
+        mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        bookAndDispatch(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+        final String modifiedETag = mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(eTag, modifiedETag);
+    }
+
+    @Test
+    public void testAvailabilityFormatsHaveDistinctETags() throws Exception {
+        final String path = getAvailabilityPath(LocalDate.now().plusDays(1), LocalDate.now().plusDays(5));
+        final String eTag = mvc.perform(get(path)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get(path).accept(ReservationController.AVAILABILITY_RUNS_VALUE)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testAvailabilityFeed() throws Exception {
+        final MvcResult feed = mvc.perform(get(reservationPath + "availability-feed")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        final String readyEvent = feed.getResponse().getContentAsString();
+        final long version = Long.parseLong(readyEvent.substring(readyEvent.indexOf("id:") + 3,
+                readyEvent.indexOf('\n', readyEvent.indexOf("id:"))));
+
+        bookAndDispatch(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+        final String changeEvent = "id:" + (version + 1);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!feed.getResponse().getContentAsString().contains(changeEvent)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(feed.getResponse().getContentAsString().contains("event:availability\n" + changeEvent));
+
+        // a client reconnecting from the ready event receives the change it missed
+        final MvcResult resumed = mvc.perform(get(reservationPath + "availability-feed")
+                .header("Last-Event-ID", version)
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertTrue(resumed.getResponse().getContentAsString().contains(changeEvent));
+    }
+
+    @Test
+    public void testCreateReservationsInBatch() throws Exception {
+        final List<BookingData> bookings = Arrays.asList(
+                getBookingData(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)),
+                getBookingData(LocalDate.now().plusDays(3), LocalDate.now().plusDays(4)),
+                getBookingData(LocalDate.now().plusDays(5), LocalDate.now().plusDays(15)),
+                getBookingData(LocalDate.now().plusDays(5), LocalDate.now().plusDays(5)));
+        final MvcResult result = mvc.perform(post(reservationPath + "batch")
+                .content(getGson().toJson(bookings))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        final JsonArray results = new JsonParser().parse(result.getResponse().getContentAsString()).getAsJsonArray();
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).getAsJsonObject().get("booked").getAsBoolean());
+        assertEquals("The selected dates is not available anymore.",
+                results.get(1).getAsJsonObject().get("error").getAsString());
+        assertEquals("The campsite only be booked up to 3 days.",
+                results.get(2).getAsJsonObject().get("error").getAsString());
+        assertTrue(results.get(3).getAsJsonObject().get("booked").getAsBoolean());
+        assertEquals(2, reservationRepository.count());
+    }
+
+    @Test
+    public void testMetricsAreScraped() throws Exception {
+        mvc.perform(post(reservationPath)
+                .content(getPayload(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)))
+                .accept(MediaType.ALL)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        mvc.perform(post(reservationPath)
+                .content(getPayload(LocalDate.now().plusDays(3), LocalDate.now().plusDays(4)))
+                .accept(MediaType.ALL)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get(reservationPath + "list-availability")
+                .param("startDate", LocalDate.now().toString())
+                .param("finalDate", LocalDate.now().plusDays(6).toString())
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        final String metrics = mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(metrics.contains("campsite_booking_lock_wait_seconds_bucket{operation=\"book\""));
+        assertTrue(metrics.contains("campsite_booking_lock_hold_seconds_bucket{operation=\"book\""));
+        assertTrue(metrics.contains("campsite_booking_conflicts_total{detected_by=\"database\",}"));
+        assertTrue(metrics.contains("campsite_repository_invocations_seconds_count{exception=\"none\"," +
+                "method=\"save\",repository=\"ReservationRepository\",}"));
+        assertTrue(metrics.contains("campsite_availability_window_days_bucket{le=\"7.0\",}"));
+    }
+
+    private void bookAndDispatch(final LocalDate checkIn, final LocalDate checkOut) throws Exception {
+        mvc.perform(post(reservationPath)
+                .content(getPayload(checkIn, checkOut))
+                .accept(MediaType.ALL)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        reservationOutboxDispatcher.dispatch();
+    }
+
+    private String getAvailabilityPath(final LocalDate startDate, final LocalDate finalDate) {
+        return String.format("%s/list-availability?startDate=%s&finalDate=%s", reservationPath,
+                startDate.format(DateTimeFormatter.ISO_LOCAL_DATE), finalDate.format(DateTimeFormatter.ISO_LOCAL_DATE));
+    }
+
     @Test
     public void testConcurrentCreateReservations() throws Exception {
         ExecutorService executor = Executors.newFixedThreadPool(20);
@@ -207,13 +399,16 @@ public class ReservationControllerTest {
     }
 
     private String getPayload(LocalDate startDate, LocalDate endDate) {
-        BookingData data = BookingData.builder()
+        return getGson().toJson(getBookingData(startDate, endDate));
+    }
+
+    private BookingData getBookingData(LocalDate startDate, LocalDate endDate) {
+        return BookingData.builder()
                 .name("Elon musk")
                 .email("elon.musk@tesla.com")
                 .checkIn(startDate)
                 .checkOut(endDate)
                 .build();
-        return getGson().toJson(data);
     }
     private Gson getGson() {
         return new GsonBuilder().registerTypeAdapter(LocalDate.class, new LocalDateAdapter()).create();
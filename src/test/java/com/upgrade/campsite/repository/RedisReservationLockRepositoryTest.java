@@ -0,0 +1,90 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.exception.LockAcquisitionException;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(classes = CampsiteApplication.class, properties = {
+        "campsite.booking.lock.provider=redis",
+        "campsite.booking.lock.lease-time=1000",
+        "campsite.booking.lock.wait-time=200" })
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class RedisReservationLockRepositoryTest {
+
+    @Autowired(required =  true)
+    private ReservationLockRepository reservationLockRepository;
+
+    private final LocalDate checkIn = LocalDate.now().plusDays(10);
+
+    private final DateRange nights = DateRange.of(checkIn, checkIn.plusDays(2));
+
+    @Test
+    public void testRedisProviderIsConfigured() {
+        assertTrue(reservationLockRepository instanceof RedisReservationLockRepository);
+    }
+
+    @Test(expected = LockAcquisitionException.class)
+    public void testOverlappingLeaseIsRejected() throws Exception {
+        try (ReservationLock lock = reservationLockRepository.lock(nights)) {
+            lockFromOtherThread(checkIn.plusDays(2), checkIn.plusDays(4));
+        }
+    }
+
+    @Test
+    public void testNonOverlappingLeasesAreGranted() throws Exception {
+        try (ReservationLock lock = reservationLockRepository.lock(nights)) {
+            lockFromOtherThread(checkIn.plusDays(3), checkIn.plusDays(5));
+        }
+    }
+
+    @Test
+    public void testReleasedLeaseCanBeAcquiredAgain() throws Exception {
+        try (ReservationLock lock = reservationLockRepository.lock(nights)) {
+            lock.verify();
+        }
+        try (ReservationLock lock = reservationLockRepository.lock(nights)) {
+            lock.verify();
+        }
+    }
+
+    @Test
+    public void testExpiredLeaseIsTakenOver() throws Exception {
+        final ReservationLock expired = reservationLockRepository.lock(nights);
+        TimeUnit.MILLISECONDS.sleep(1200);
+        try (ReservationLock lock = reservationLockRepository.lock(nights)) {
+            boolean lost = false;
+            try {
+                expired.verify();
+            } catch (LockAcquisitionException e) {
+                lost = true;
+            }
+            assertTrue(lost);
+            // releasing a lost lease must not drop the lease of the new owner
+            expired.close();
+            lock.verify();
+        }
+    }
+
+    private void lockFromOtherThread(final LocalDate startDate, final LocalDate endDate) throws Exception {
+        try {
+            final DateRange range = DateRange.of(startDate, endDate);
+            CompletableFuture.runAsync(() -> reservationLockRepository.lock(range).close()).get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+}
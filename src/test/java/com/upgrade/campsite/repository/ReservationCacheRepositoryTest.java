@@ -1,21 +1,34 @@
 package com.upgrade.campsite.repository;
 
 import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.configuration.EpochDayRedisSerializer;
+import com.upgrade.campsite.service.ReservationCacheWarmer;
+import com.upgrade.campsite.utils.DateRange;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @SpringBootTest(classes = CampsiteApplication.class)
 @RunWith(SpringRunner.class)
@@ -28,42 +41,231 @@ public class ReservationCacheRepositoryTest {
     @Autowired(required =  true)
     private RedisTemplate<String, LocalDate> template;
 
+    @Autowired(required =  true)
+    private ReservationCacheWarmer reservationCacheWarmer;
+
     @Before
-    public void setup() {
+    public void setup() throws Exception {
+        // a rebuild started with the context would swap its cache over the one written by the test
+        reservationCacheWarmer.warmUp().get();
         template.delete("reservations");
     }
 
-    private LocalDate[] getLocalDates() {
-        Set<LocalDate> localDates = new HashSet<>();
-        localDates.add(LocalDate.now());
-        localDates.add(LocalDate.now().plusDays(1));
-        localDates.add(LocalDate.now().plusDays(2));
-        return localDates.toArray(new LocalDate[0]);
+    private DateRange getDateRange() {
+        return DateRange.of(LocalDate.now(), LocalDate.now().plusDays(2));
+    }
+
+    private DateRange getNight(final int daysAhead) {
+        return DateRange.of(LocalDate.now().plusDays(daysAhead), LocalDate.now().plusDays(daysAhead));
+    }
+
+    private Set<LocalDate> getLocalDates() {
+        return new HashSet<>(Arrays.asList(LocalDate.now(), LocalDate.now().plusDays(1), LocalDate.now().plusDays(2)));
     }
 
     @Test
-    public void testAddReservation() {
-        reservationCacheRepository.addReservation(getLocalDates());
-        assertEquals(reservationCacheRepository.getReservations(), new HashSet(Arrays.asList(getLocalDates())));
+    public void testUpdateBooksNights() {
+        updateNights(getDateRange(), true);
+        assertEquals(getCachedDates(), getLocalDates());
     }
 
     @Test
-    public void testRemoveReservation() {
-        reservationCacheRepository.addReservation(getLocalDates());
-        reservationCacheRepository.removeReservation(LocalDate.now().plusDays(1));
+    public void testUpdateReleasesNights() {
+        updateNights(getDateRange(), true);
+        updateNights(getNight(1), false);
         final Set<LocalDate> expectedDates = new HashSet<>(Arrays.asList(LocalDate.now(), LocalDate.now().plusDays(2)));
-        assertEquals(reservationCacheRepository.getReservations(), expectedDates);
+        assertEquals(getCachedDates(), expectedDates);
+    }
+
+    @Test
+    public void testUpdateOnlyWritesTheChangedNights() {
+        updateNights(getDateRange(), true);
+        final BitSet changed = new BitSet();
+        changed.set(0);
+        changed.set(2);
+        final BitSet booked = new BitSet();
+        booked.set(0);
+        reservationCacheRepository.updateReservations(getDateRange(), changed, booked);
+        assertEquals(new HashSet<>(Arrays.asList(LocalDate.now(), LocalDate.now().plusDays(1))), getCachedDates());
     }
 
     @Test
     public void testGetReservations() {
-        reservationCacheRepository.addReservation(getLocalDates());
-        assertEquals(reservationCacheRepository.getReservations(), new HashSet(Arrays.asList(getLocalDates())));
+        updateNights(getDateRange(), true);
+        assertEquals(getCachedDates(), getLocalDates());
+    }
+
+    @Test
+    public void testGetReservationsInRange() {
+        updateNights(getDateRange(), true);
+        updateNights(getNight(40), true);
+        final BitSet expectedNights = new BitSet();
+        expectedNights.set(0, 2);
+        assertEquals(expectedNights, reservationCacheRepository.getReservations(
+                DateRange.of(LocalDate.now().plusDays(1), LocalDate.now().plusDays(30))));
+        assertEquals(new BitSet(), reservationCacheRepository.getReservations(
+                DateRange.of(LocalDate.now().plusDays(3), LocalDate.now().plusDays(39))));
     }
 
     @Test
     public void testInitializeCache() {
-        reservationCacheRepository.initializeCache(getLocalDates());
-        assertEquals(reservationCacheRepository.getReservations(), new HashSet(Arrays.asList(getLocalDates())));
+        reservationCacheRepository.initializeCache(getDateRange());
+        assertEquals(getCachedDates(), getLocalDates());
+    }
+
+    @Test
+    public void testRebuildCache() {
+        updateNights(getNight(10), true);
+        assertTrue(reservationCacheRepository.rebuildCache(reservationCacheRepository.getVersion(),
+                Collections.singletonList(getDateRange()).iterator()));
+        assertEquals(getCachedDates(), getLocalDates());
+    }
+
+    @Test
+    public void testRebuildCacheReplaysConcurrentWrites() {
+        updateNights(getNight(1), true);
+        final long version = reservationCacheRepository.getVersion();
+        updateNights(getNight(10), true);
+        updateNights(getNight(1), false);
+        assertTrue(reservationCacheRepository.rebuildCache(version,
+                Collections.singletonList(getDateRange()).iterator()));
+        assertEquals(new HashSet<>(Arrays.asList(LocalDate.now(), LocalDate.now().plusDays(2),
+                LocalDate.now().plusDays(10))), getCachedDates());
+    }
+
+    @Test
+    public void testRebuildCacheIsAbortedWhenConcurrentWritesAreNotJournaled() {
+        final long version = reservationCacheRepository.getVersion();
+        updateNights(getNight(10), true);
+        template.delete("reservations:journal");
+        assertFalse(reservationCacheRepository.rebuildCache(version,
+                Collections.singletonList(getDateRange()).iterator()));
+        assertEquals(Collections.singleton(LocalDate.now().plusDays(10)), getCachedDates());
+    }
+
+    @Test
+    public void testChangedNightsAreEncodedAsRuns() {
+        final DateRange span = DateRange.of(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 10));
+        final BitSet changed = new BitSet();
+        changed.set(0, 4);
+        changed.set(6);
+        final BitSet booked = new BitSet();
+        booked.set(0, 2);
+        assertEquals("0-1:1,2-3:0,6-6:0", ReservationCacheRepositoryImpl.toRuns(span, changed, booked));
+        // the nights before the first cached one are left out
+        assertEquals("0-1:0,4-4:0", ReservationCacheRepositoryImpl.toRuns(DateRange.of(LocalDate.of(2018, 12, 30),
+                LocalDate.of(2019, 1, 1)), changed, booked));
+    }
+
+    @Test
+    public void testEmptyCacheIsInitialized() {
+        reservationCacheRepository.initializeCache();
+        assertNotNull(reservationCacheRepository.getBuiltAt());
+        assertEquals(Collections.emptySet(), getCachedDates());
+    }
+
+    @Test
+    public void testReservationsAreStoredAsBitmap() {
+        updateNights(getDateRange(), true);
+        final long lastOffset = ReservationCacheRepositoryImpl.toOffset(LocalDate.now().plusDays(2).toEpochDay());
+        final byte[] key = "reservations".getBytes();
+        final Long size = template.execute((RedisCallback<Long>) connection -> connection.strLen(key));
+        final Long booked = template.execute((RedisCallback<Long>) connection -> connection.bitCount(key));
+        assertEquals(Long.valueOf(lastOffset / 8 + 1), size);
+        assertEquals(Long.valueOf(3), booked);
+    }
+
+    @Test
+    public void testClaimReservation() {
+        reservationCacheRepository.initializeCache(getNight(2));
+
+        final long version = reservationCacheRepository.getVersion();
+        assertFalse(reservationCacheRepository.claimReservation(getDateRange()));
+        assertEquals(version, reservationCacheRepository.getVersion());
+        assertTrue(reservationCacheRepository.claimReservation(getNight(3)));
+        assertEquals(version + 1, reservationCacheRepository.getVersion());
+        assertEquals(new HashSet<>(Arrays.asList(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3))),
+                getCachedDates());
+
+    }
+
+    @Test
+    public void testCacheIsNotReadyWithoutSentinel() {
+        template.delete("reservations:ready");
+        // bits written by the outbox dispatcher to a missing cache
+        updateNights(getNight(2), true);
+
+        assertNull(reservationCacheRepository.getBuiltAt());
+        assertNull(reservationCacheRepository.getReservations(getDateRange()));
+        assertNull(reservationCacheRepository.claimReservation(getNight(3)));
+
+        reservationCacheRepository.initializeCache();
+        assertTrue(reservationCacheRepository.getBuiltAt() <= System.currentTimeMillis());
+        assertEquals(new BitSet(), reservationCacheRepository.getReservations(getDateRange()));
+    }
+
+    @Test
+    public void testVersionTagChangesWithTheNightsOfTheRange() {
+        reservationCacheRepository.initializeCache();
+        final DateRange range = getDateRange();
+        final String tag = reservationCacheRepository.getVersionedReservations(range).getVersionTag();
+
+        updateNights(getNight(70), true);
+        assertEquals(tag, reservationCacheRepository.getVersionedReservations(range).getVersionTag());
+        updateNights(getNight(1), true);
+        assertNotEquals(tag, reservationCacheRepository.getVersionedReservations(range).getVersionTag());
+    }
+
+    @Test
+    public void testVersionTagIsNotReusedAfterDataLoss() throws Exception {
+        reservationCacheRepository.initializeCache();
+        final String tag = reservationCacheRepository.getVersionedReservations(getDateRange()).getVersionTag();
+
+        // the month versions restart from zero, the rebuild which follows brings back a cache of another content
+        template.delete(Arrays.asList("reservations", "reservations:ready", "reservations:month-versions"));
+        Thread.sleep(2);
+        reservationCacheRepository.initializeCache(getNight(1));
+        assertNotEquals(tag, reservationCacheRepository.getVersionedReservations(getDateRange()).getVersionTag());
+    }
+
+    @Test
+    public void testLegacyCacheIsMigrated() {
+        final JdkSerializationRedisSerializer legacySerializer = new JdkSerializationRedisSerializer();
+        final byte[] key = "reservations".getBytes();
+        template.execute((RedisCallback<Long>) connection -> connection.sAdd(key,
+                getLocalDates().stream().map(legacySerializer::serialize).toArray(byte[][]::new)));
+
+        assertTrue(reservationCacheRepository.migrateLegacyCache());
+        assertEquals(getLocalDates(), getCachedDates());
+        assertFalse(reservationCacheRepository.migrateLegacyCache());
+    }
+
+    @Test
+    public void testDatesAreSerializedAsEpochDays() {
+        final RedisSerializer<LocalDate> serializer = new EpochDayRedisSerializer();
+        assertEquals(Integer.BYTES, serializer.serialize(LocalDate.now()).length);
+        assertEquals(LocalDate.now(), serializer.deserialize(serializer.serialize(LocalDate.now())));
+        assertEquals(LocalDate.now(), serializer.deserialize(
+                new JdkSerializationRedisSerializer().serialize(LocalDate.now())));
+    }
+
+    /**
+     * Booked nights of the next 60 days, as dates.
+     */
+    private Set<LocalDate> getCachedDates() {
+        final DateRange window = DateRange.of(LocalDate.now(), LocalDate.now().plusDays(60));
+        final Set<LocalDate> dates = new HashSet<>();
+        reservationCacheRepository.getReservations(window).stream()
+                .forEach(night -> dates.add(LocalDate.ofEpochDay(window.getFirstDay() + night)));
+        return dates;
+    }
+
+    /**
+     * Books or releases every night of the range, as the outbox dispatcher does.
+     */
+    private void updateNights(final DateRange range, final boolean booked) {
+        final BitSet nights = new BitSet();
+        nights.set(0, range.length());
+        reservationCacheRepository.updateReservations(range, nights, booked ? nights : new BitSet());
     }
-}
\ No newline at end of file
+}
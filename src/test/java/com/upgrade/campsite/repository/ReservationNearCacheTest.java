@@ -0,0 +1,175 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.service.ReservationCacheWarmer;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(classes = CampsiteApplication.class, properties = {
+        "campsite.cache.near.enabled=true",
+        "campsite.cache.near.max-staleness=2000",
+        "campsite.cache.near.max-months=6" })
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationNearCacheTest {
+
+    @Autowired(required =  true)
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired(required =  true)
+    private ReservationNearCache nearCache;
+
+    @Autowired(required =  true)
+    private RedisTemplate<String, LocalDate> template;
+
+    @Autowired(required =  true)
+    private MeterRegistry meterRegistry;
+
+    private final LocalDate checkIn = LocalDate.now().plusDays(3);
+
+    @Autowired(required =  true)
+    private ReservationCacheWarmer reservationCacheWarmer;
+
+    @Before
+    public void setup() throws Exception {
+        // the rebuild started with the application would drop the near cache in the middle of a test
+        reservationCacheWarmer.warmUp().get();
+        reservationCacheRepository.initializeCache();
+    }
+
+    @Test
+    public void testReadsAreServedFromNearCache() {
+        updateNights(DateRange.of(checkIn, checkIn), true);
+        assertEquals(Collections.singleton(checkIn), getReservations());
+
+        bookBehindTheCache(checkIn.plusDays(1));
+        assertEquals(Collections.singleton(checkIn), getReservations());
+        assertTrue(nearCache.getHitRatio() > 0);
+    }
+
+    @Test
+    public void testNearCacheHitsKeepTheTagOfTheirRead() {
+        final DateRange range = DateRange.of(checkIn, checkIn.plusDays(2));
+        final VersionedNights loaded = reservationCacheRepository.getVersionedReservations(range);
+
+        // another node books a night and bumps the month, its invalidation has not arrived yet
+        bookBehindTheCache(checkIn);
+        template.execute((RedisCallback<Long>) connection -> connection.hIncrBy(
+                "reservations:month-versions".getBytes(StandardCharsets.UTF_8),
+                String.valueOf(ReservationNearCache.toMonthIndex(checkIn)).getBytes(StandardCharsets.UTF_8), 1));
+
+        final VersionedNights cached = reservationCacheRepository.getVersionedReservations(range);
+        assertEquals(loaded.getNights(), cached.getNights());
+        assertEquals(loaded.getVersionTag(), cached.getVersionTag());
+    }
+
+    @Test
+    public void testWideReadsStayWithinTheMonthsBound() {
+        // a year is read while only six months can be kept, the nearest ones are
+        reservationCacheRepository.getReservations(DateRange.of(checkIn, checkIn.plusYears(1)));
+        assertEquals(6, getCachedMonths());
+        assertHit(DateRange.of(checkIn, checkIn.plusMonths(4)));
+
+        final DateRange later = DateRange.of(checkIn.plusYears(2), checkIn.plusYears(2).plusMonths(2));
+        reservationCacheRepository.getReservations(later);
+        assertTrue(getCachedMonths() <= 6);
+        assertHit(later);
+    }
+
+    @Test
+    public void testLocalWritesInvalidateNearCache() {
+        assertEquals(Collections.emptySet(), getReservations());
+        updateNights(DateRange.of(checkIn, checkIn.plusDays(1)), true);
+        assertEquals(new HashSet<>(Arrays.asList(checkIn, checkIn.plusDays(1))), getReservations());
+        updateNights(DateRange.of(checkIn, checkIn), false);
+        assertEquals(Collections.singleton(checkIn.plusDays(1)), getReservations());
+    }
+
+    @Test
+    public void testInvalidationFromOtherNode() throws Exception {
+        assertEquals(Collections.emptySet(), getReservations());
+
+        bookBehindTheCache(checkIn);
+        final String month = String.valueOf(checkIn.getYear() * 12 + checkIn.getMonthValue() - 1);
+        final byte[] message = ("other-node|" + System.currentTimeMillis() + "|" + month)
+                .getBytes(StandardCharsets.UTF_8);
+        template.execute((RedisCallback<Long>) connection ->
+                connection.publish(ReservationNearCache.CHANNEL.getBytes(StandardCharsets.UTF_8), message));
+
+        assertEquals(Collections.singleton(checkIn), awaitReservations(1000));
+    }
+
+    @Test
+    public void testStaleEntriesAreReloaded() throws Exception {
+        assertEquals(Collections.emptySet(), getReservations());
+        bookBehindTheCache(checkIn);
+        assertEquals(Collections.singleton(checkIn), awaitReservations(3000));
+    }
+
+    private Set<LocalDate> getReservations() {
+        final Set<LocalDate> dates = new HashSet<>();
+        reservationCacheRepository.getReservations(DateRange.of(checkIn, checkIn.plusDays(2))).stream()
+                .forEach(night -> dates.add(checkIn.plusDays(night)));
+        return dates;
+    }
+
+    private Set<LocalDate> awaitReservations(final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        Set<LocalDate> reservations = getReservations();
+        while (reservations.isEmpty() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+            reservations = getReservations();
+        }
+        return reservations;
+    }
+
+    /**
+     * Simulates a booking written to redis by another node, without going through this node's cache repository.
+     */
+    private int getCachedMonths() {
+        return (int) meterRegistry.get("campsite.cache.near.months").gauge().value();
+    }
+
+    private void assertHit(final DateRange range) {
+        final double hits = meterRegistry.get("campsite.cache.near.requests").tag("result", "hit").counter().count();
+        reservationCacheRepository.getReservations(range);
+        assertEquals(hits + 1, meterRegistry.get("campsite.cache.near.requests").tag("result", "hit").counter()
+                .count(), 0);
+    }
+
+    private void bookBehindTheCache(final LocalDate date) {
+        final long offset = ReservationCacheRepositoryImpl.toOffset(date.toEpochDay());
+        template.execute((RedisCallback<Boolean>) connection -> connection.setBit(
+                "reservations".getBytes(StandardCharsets.UTF_8), offset, true));
+    }
+
+    /**
+     * Books or releases every night of the range, as the outbox dispatcher does.
+     */
+    private void updateNights(final DateRange range, final boolean booked) {
+        final BitSet nights = new BitSet();
+        nights.set(0, range.length());
+        reservationCacheRepository.updateReservations(range, nights, booked ? nights : new BitSet());
+    }
+}
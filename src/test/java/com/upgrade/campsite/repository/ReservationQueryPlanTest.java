@@ -0,0 +1,143 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.CampsiteApplication;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails when a lookup of the repositories stops using the index created for it by the migrations. The SQL generated
+ * by hibernate for each repository method is captured and explained with the same parameters, against a table where
+ * most reservations are expired, as it is once the site has been running for a while.
+ */
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationQueryPlanTest {
+
+    private static final int EXPIRED = 2000;
+
+    private static final int UPCOMING = 20;
+
+    @Autowired(required = true)
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired(required = true)
+    private ReservationRepository reservationRepository;
+
+    @Autowired(required = true)
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired(required = true)
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setup() {
+        final LocalDate today = LocalDate.now();
+        final List<Object[]> reservations = new ArrayList<>();
+        final List<Object[]> nights = new ArrayList<>();
+        for (int id = 1; id <= EXPIRED + UPCOMING; id++) {
+            final LocalDate endDate = id <= EXPIRED ? today.minusDays(1 + id % 300) : today.plusDays(id % 30);
+            reservations.add(new Object[] { id, "transaction-" + id, Date.valueOf(endDate.minusDays(2)),
+                    Date.valueOf(endDate) });
+            nights.add(new Object[] { id, Date.valueOf(today.minusDays(EXPIRED).plusDays(id)), id });
+        }
+        jdbcTemplate.batchUpdate("insert into reservation (id, transaction_id, start_date, end_date) " +
+                "values (?, ?, ?, ?)", reservations);
+        jdbcTemplate.batchUpdate("insert into reservation_night (id, night, reservation_id) values (?, ?, ?)",
+                nights);
+        jdbcTemplate.execute("analyze");
+    }
+
+    @After
+    public void after() {
+        jdbcTemplate.update("delete from reservation_night");
+        jdbcTemplate.update("delete from reservation");
+    }
+
+    @Test
+    public void testFindNotExpiredPeriodsWalksThePrimaryKey() {
+        // the keyset pages are read in id order, without sorting, the expired rows being moved out by the archiver
+        StatementRecorder.clear();
+        reservationRepository.findNotExpiredPeriods(0L, PageRequest.of(0, 500));
+        final String plan = assertUsesIndex("PRIMARY_KEY", StatementRecorder.last(), 0L, 500);
+        assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    @Test
+    public void testFindExpiredIdsUsesIndex() {
+        StatementRecorder.clear();
+        reservationRepository.findExpiredIds(PageRequest.of(0, 500));
+        assertUsesIndex("IDX_RESERVATION_END_DATE_ID", StatementRecorder.last(), 500);
+    }
+
+    @Test
+    public void testFindOldestExpiredEndDateUsesIndex() {
+        StatementRecorder.clear();
+        reservationRepository.findOldestExpiredEndDate();
+        assertUsesIndex("IDX_RESERVATION_END_DATE_ID", StatementRecorder.last());
+    }
+
+    @Test
+    public void testFindByTransactionIdUsesIndex() {
+        StatementRecorder.clear();
+        reservationRepository.findByTransactionId("transaction-1");
+        assertUsesIndex("UK_RESERVATION_TRANSACTION_ID", StatementRecorder.last(), "transaction-1");
+
+        StatementRecorder.clear();
+        reservationRepository.findPeriodByTransactionId("transaction-1");
+        assertUsesIndex("UK_RESERVATION_TRANSACTION_ID", StatementRecorder.last(), "transaction-1");
+    }
+
+    @Test
+    public void testFindNightsUsesIndex() {
+        final java.util.Date first = Date.valueOf(LocalDate.now());
+        final java.util.Date last = Date.valueOf(LocalDate.now().plusDays(30));
+        StatementRecorder.clear();
+        reservationNightRepository.findNights(first, last);
+        assertUsesIndex("UK_RESERVATION_NIGHT_NIGHT", StatementRecorder.last(), first, last);
+    }
+
+    @Test
+    public void testNightDeletesUseIndex() {
+        final java.util.Date first = Date.valueOf(LocalDate.now());
+        final java.util.Date last = Date.valueOf(LocalDate.now().plusDays(2));
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.execute(status -> {
+            StatementRecorder.clear();
+            reservationNightRepository.deleteByReservationId(1L);
+            assertUsesIndex("IDX_RESERVATION_NIGHT_RESERVATION_ID", StatementRecorder.last(), 1L);
+
+            // the range of nights is unique, so the night index is as selective as the reservation one
+            StatementRecorder.clear();
+            reservationNightRepository.deleteNights(1L, first, last);
+            assertUsesIndex("UK_RESERVATION_NIGHT_NIGHT", StatementRecorder.last(), 1L, first, last);
+            status.setRollbackOnly();
+            return null;
+        });
+    }
+
+    private String assertUsesIndex(final String index, final String query, final Object... parameters) {
+        final String plan = jdbcTemplate.queryForObject("explain " + query, String.class, parameters);
+        assertFalse(plan, plan.contains("tableScan"));
+        assertTrue(plan, plan.contains("PUBLIC." + index));
+        return plan;
+    }
+}
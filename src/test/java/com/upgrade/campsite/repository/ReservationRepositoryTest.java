@@ -0,0 +1,83 @@
+package com.upgrade.campsite.repository;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.entity.Reservation;
+import com.upgrade.campsite.utils.ApplicationUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationRepositoryTest {
+
+    private static final int RESERVATIONS = 1000;
+
+    @Autowired(required = true)
+    private ReservationRepository reservationRepository;
+
+    @Autowired(required = true)
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired(required = true)
+    private PlatformTransactionManager transactionManager;
+
+    @After
+    public void after() {
+        reservationRepository.deleteAll();
+    }
+
+    /**
+     * Saved one by one, each reservation is flushed on its own and sends its own insert. Saved together, the inserts
+     * of the same table share a JDBC batch, so the load takes a fraction of the statements of the row by row path.
+     */
+    @Test
+    public void testBulkLoadIsBatched() {
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        newReservations().forEach(reservationRepository::save);
+        final long rowByRow = statistics.getPrepareStatementCount();
+        reservationRepository.deleteAll();
+
+        statistics.clear();
+        final List<Reservation> reservations = newReservations();
+        new TransactionTemplate(transactionManager).execute(status -> reservationRepository.saveAll(reservations));
+
+        final long statements = statistics.getPrepareStatementCount();
+        log.info("{} reservations loaded with {} statements, {} row by row", RESERVATIONS, statements, rowByRow);
+        assertEquals(RESERVATIONS, statistics.getEntityInsertCount());
+        assertTrue(statements * 10 < rowByRow);
+    }
+
+    private List<Reservation> newReservations() {
+        final List<Reservation> reservations = new ArrayList<>(RESERVATIONS);
+        for (int i = 0; i < RESERVATIONS; i++) {
+            final Reservation reservation = new Reservation();
+            reservation.setName("Bulk");
+            reservation.setEmail("bulk@campsite.com");
+            reservation.setStartDate(ApplicationUtils.toDate(LocalDate.now().plusDays(i)));
+            reservation.setEndDate(ApplicationUtils.toDate(LocalDate.now().plusDays(i)));
+            reservations.add(reservation);
+        }
+        return reservations;
+    }
+}
@@ -0,0 +1,59 @@
+package com.upgrade.campsite.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the SQL statements hibernate prepares, so the tests can check the queries the repositories really send, and
+ * lets a test act right before a given statement is sent.
+ */
+public class StatementRecorder implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    private static Predicate<String> hookStatement;
+
+    private static Runnable hook;
+
+    @Override
+    public String inspect(final String sql) {
+        STATEMENTS.add(sql);
+        final Runnable action = takeHook(sql);
+        if (action != null) {
+            action.run();
+        }
+        return sql;
+    }
+
+    /**
+     * Runs the action once, on the thread preparing the next statement matching the predicate, before that statement
+     * is sent. An exception thrown by the action fails the statement.
+     */
+    public static synchronized void before(final Predicate<String> statement, final Runnable action) {
+        hookStatement = statement;
+        hook = action;
+    }
+
+    private static synchronized Runnable takeHook(final String sql) {
+        if (hook == null || !hookStatement.test(sql)) {
+            return null;
+        }
+        final Runnable action = hook;
+        hook = null;
+        return action;
+    }
+
+    public static void clear() {
+        STATEMENTS.clear();
+    }
+
+    /**
+     * Last statement prepared since {@link #clear()}.
+     */
+    public static String last() {
+        return STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+}
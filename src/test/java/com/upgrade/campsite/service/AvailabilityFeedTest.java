@@ -0,0 +1,71 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.presenter.AvailabilityChange;
+import com.upgrade.campsite.presenter.AvailabilityRun;
+import com.upgrade.campsite.repository.ReservationChangeRepository;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class AvailabilityFeedTest {
+
+    @Autowired
+    private AvailabilityFeed availabilityFeed;
+
+    @Autowired
+    private ReservationChangeRepository reservationChangeRepository;
+
+    private final LocalDate checkIn = LocalDate.now().plusDays(3);
+
+    @Test
+    public void testChangesAreSentAsRuns() {
+        final long version = reservationChangeRepository.getLatestVersion();
+        // books the first two nights of the span and releases the fourth one
+        final BitSet changed = new BitSet();
+        changed.set(0, 2);
+        changed.set(3);
+        final BitSet booked = new BitSet();
+        booked.set(0, 2);
+        availabilityFeed.publish(DateRange.of(checkIn, checkIn.plusDays(3)), changed, booked);
+
+        final List<AvailabilityChange> changes = availabilityFeed.getChangesSince(version);
+        assertEquals(1, changes.size());
+        assertEquals(Long.valueOf(version + 1), changes.get(0).getVersion());
+        assertEquals(Arrays.asList(
+                AvailabilityRun.builder().from(checkIn).to(checkIn.plusDays(1)).available(false).build(),
+                AvailabilityRun.builder().from(checkIn.plusDays(3)).to(checkIn.plusDays(3)).available(true).build()),
+                changes.get(0).getNights());
+    }
+
+    @Test
+    public void testResumingPastTheHistoryIsRefused() {
+        final long version = reservationChangeRepository.getLatestVersion();
+        final BitSet nights = new BitSet();
+        nights.set(0);
+        // the test profile keeps the last 5 changes
+        for (int i = 0; i < 6; i++) {
+            availabilityFeed.publish(DateRange.of(checkIn, checkIn), nights, nights);
+        }
+        assertNull(availabilityFeed.getChangesSince(version));
+        assertEquals(5, availabilityFeed.getChangesSince(version + 1).size());
+        assertEquals(2, availabilityFeed.getChangesSince(version + 4).size());
+        assertEquals(Collections.emptyList(), availabilityFeed.getChangesSince(version + 6));
+    }
+}
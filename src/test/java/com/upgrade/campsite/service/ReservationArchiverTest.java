@@ -0,0 +1,76 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.entity.Reservation;
+import com.upgrade.campsite.entity.ReservationNight;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.utils.ApplicationUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationArchiverTest {
+
+    @Autowired
+    private ReservationArchiver reservationArchiver;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void after() {
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+        jdbcTemplate.update("delete from reservation_archive");
+    }
+
+    @Test
+    public void testArchiveMovesOnlyTheExpiredReservations() {
+        for (int i = 0; i < 3; i++) {
+            saveReservation(LocalDate.now().minusDays(10 + i * 2), LocalDate.now().minusDays(9 + i * 2));
+        }
+        final Reservation current = saveReservation(LocalDate.now().minusDays(1), LocalDate.now().plusDays(1));
+
+        assertEquals(3, reservationArchiver.archive());
+        assertEquals(1, reservationRepository.count());
+        assertTrue(reservationRepository.findByTransactionId(current.getTransactionId()).isPresent());
+        assertEquals(3, reservationNightRepository.count());
+        assertEquals(Integer.valueOf(3), jdbcTemplate.queryForObject("select count(*) from reservation_archive",
+                Integer.class));
+        assertEquals(0, reservationArchiver.archive());
+    }
+
+    private Reservation saveReservation(final LocalDate checkIn, final LocalDate checkOut) {
+        final BookingData bookingData = BookingData.builder()
+                .checkIn(checkIn)
+                .checkOut(checkOut)
+                .email("marie.curie@gmail.com")
+                .name("Marie Curie")
+                .build();
+        final Reservation reservation = reservationRepository.save(bookingData.toReservation());
+        bookingData.toDateRange().forEachDay(night -> reservationNightRepository.save(
+                new ReservationNight(ApplicationUtils.toDate(night), reservation.getId())));
+        return reservation;
+    }
+}
@@ -0,0 +1,98 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.configuration.ReservationCacheHealthIndicator;
+import com.upgrade.campsite.presenter.AvailabilityData;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.connection.PoolException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Redis down with pooled connections: every cache call fails to borrow a connection with a PoolException, which is
+ * not a DataAccessException.
+ */
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+@TestPropertySource(properties = "campsite.booking.fast-path=true")
+public class ReservationCacheUnavailableTest {
+
+    @MockBean
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired
+    private ReservationCacheHealthIndicator reservationCacheHealthIndicator;
+
+    @Before
+    public void setup() {
+        final PoolException unavailable = new PoolException("Could not get a resource from the pool");
+        when(reservationCacheRepository.getVersionedReservations(any(DateRange.class))).thenThrow(unavailable);
+        when(reservationCacheRepository.claimReservation(any(DateRange.class))).thenThrow(unavailable);
+        when(reservationCacheRepository.getBuiltAt()).thenThrow(unavailable);
+    }
+
+    @After
+    public void after() {
+        // the mocked cache accepts the outbox events
+        reservationOutboxDispatcher.dispatch();
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+    }
+
+    @Test
+    public void testBookingAndAvailabilityFallBackToTheDatabase() throws Exception {
+        // the claim fails, the booking takes the locked path
+        assertNotNull(reservationService.book(BookingData.builder()
+                .checkIn(LocalDate.now().plusDays(2))
+                .checkOut(LocalDate.now().plusDays(3))
+                .email("thomas.edison@gmail.com")
+                .name("Thomas Edison")
+                .build()));
+
+        final List<LocalDate> bookedDates = reservationService.findCampsiteAvailability(LocalDate.now(),
+                LocalDate.now().plusDays(5)).stream()
+                .filter(a -> !a.getAvailable())
+                .map(AvailabilityData::getDate)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)), bookedDates);
+        assertNull(reservationService.findCampsiteAvailabilityCalendar(LocalDate.now(), LocalDate.now().plusDays(5))
+                .getVersion());
+        assertEquals(ReservationCacheHealthIndicator.DEGRADED, reservationCacheHealthIndicator.health().getStatus());
+    }
+}
@@ -0,0 +1,158 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.repository.StatementRecorder;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationCacheWarmerTest {
+
+    @Autowired
+    private ReservationCacheWarmer reservationCacheWarmer;
+
+    @Autowired
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private RedisTemplate<String, LocalDate> template;
+
+    @After
+    public void after() {
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+        template.delete("reservations");
+    }
+
+    @Test
+    public void testWarmUpLoadsReservationsFromDatabase() throws Exception {
+        final Set<LocalDate> bookedDates = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            final LocalDate checkIn = LocalDate.now().plusDays(3 + i * 3);
+            saveReservation(checkIn, checkIn.plusDays(1));
+            bookedDates.addAll(Arrays.asList(checkIn, checkIn.plusDays(1)));
+        }
+        saveReservation(LocalDate.now().minusDays(5), LocalDate.now().minusDays(4));
+        template.delete("reservations");
+
+        assertTrue(reservationCacheWarmer.warmUp().get());
+        assertEquals(bookedDates, getCachedDates());
+    }
+
+    @Test
+    public void testConcurrentWarmUpsShareOneRebuild() throws Exception {
+        final CompletableFuture<Boolean> first = reservationCacheWarmer.warmUp();
+        final CompletableFuture<Boolean> second = reservationCacheWarmer.warmUp();
+        // a second rebuild may only start once the first one is over
+        assertTrue(second == first || first.isDone());
+        assertTrue(first.get());
+        assertTrue(second.get());
+        assertNotNull(reservationCacheRepository.getBuiltAt());
+    }
+
+    @Test
+    public void testRebuildSwapsWhileTheCacheKeepsBeingWritten() throws Exception {
+        // lets a rebuild started with the context end before the reservations are saved
+        reservationCacheWarmer.warmUp().get();
+        final Set<LocalDate> bookedDates = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            final LocalDate checkIn = LocalDate.now().plusDays(3 + i * 3);
+            saveReservation(checkIn, checkIn.plusDays(1));
+            bookedDates.addAll(Arrays.asList(checkIn, checkIn.plusDays(1)));
+        }
+        final LocalDate bookedDuringRebuild = LocalDate.now().plusDays(40);
+        final LocalDate flipped = LocalDate.now().plusDays(45);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicBoolean flippedBooked = new AtomicBoolean();
+        final AtomicInteger writes = new AtomicInteger();
+        final CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            while (writing.get()) {
+                flippedBooked.set(!flippedBooked.get());
+                updateNight(flipped, flippedBooked.get());
+                writes.incrementAndGet();
+            }
+        });
+        // the cache is written while the rebuild reads the database, once it read the version it started from
+        StatementRecorder.before(sql -> sql.contains("end_date>=CURRENT_DATE"), () -> {
+            updateNight(bookedDuringRebuild, true);
+            final int target = writes.get() + 10;
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (writes.get() < target && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+        });
+        try {
+            assertTrue(reservationCacheWarmer.warmUp().get(10, TimeUnit.SECONDS));
+        } finally {
+            writing.set(false);
+            writer.get();
+        }
+
+        bookedDates.add(bookedDuringRebuild);
+        if (flippedBooked.get()) {
+            bookedDates.add(flipped);
+        }
+        assertEquals(bookedDates, getCachedDates());
+    }
+
+    private void updateNight(final LocalDate night, final boolean booked) {
+        final BitSet changed = new BitSet();
+        changed.set(0);
+        reservationCacheRepository.updateReservations(DateRange.of(night, night), changed,
+                booked ? changed : new BitSet());
+    }
+
+    private void saveReservation(final LocalDate checkIn, final LocalDate checkOut) {
+        reservationRepository.save(BookingData.builder()
+                .checkIn(checkIn)
+                .checkOut(checkOut)
+                .email("nikola.tesla@gmail.com")
+                .name("Nikola Tesla")
+                .build()
+                .toReservation());
+    }
+
+    /**
+     * Booked nights from ten days ago to sixty days ahead, as dates, so expired reservations would show up.
+     */
+    private Set<LocalDate> getCachedDates() {
+        final DateRange window = DateRange.of(LocalDate.now().minusDays(10), LocalDate.now().plusDays(60));
+        final Set<LocalDate> dates = new HashSet<>();
+        reservationCacheRepository.getReservations(window).stream()
+                .forEach(night -> dates.add(LocalDate.ofEpochDay(window.getFirstDay() + night)));
+        return dates;
+    }
+}
@@ -0,0 +1,166 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.entity.ReservationNight;
+import com.upgrade.campsite.exception.AvailabilityException;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.presenter.BookingResult;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.repository.StatementRecorder;
+import com.upgrade.campsite.utils.ApplicationUtils;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+@TestPropertySource(properties = "campsite.booking.fast-path=true")
+public class ReservationFastPathTest {
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired
+    private ReservationCacheWarmer reservationCacheWarmer;
+
+    @Autowired
+    private RedisTemplate<String, LocalDate> template;
+
+    @Before
+    public void setup() throws Exception {
+        reservationCacheWarmer.warmUp().get();
+    }
+
+    @After
+    public void after() throws Exception {
+        reservationOutboxDispatcher.dispatch();
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+        reservationCacheWarmer.warmUp().get();
+        template.delete("reservations");
+    }
+
+    @Test
+    public void testConcurrentBookingsClaimTheNightsOnce() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(10);
+        final List<Callable<String>> bookings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bookings.add(() -> reservationService.book(getBookingData(LocalDate.now().plusDays(2),
+                    LocalDate.now().plusDays(3))));
+        }
+        int booked = 0;
+        for (final Future<String> booking : executor.invokeAll(bookings)) {
+            try {
+                booking.get();
+                booked++;
+            } catch (Exception e) {
+                assertTrue(e.getCause() instanceof AvailabilityException);
+            }
+        }
+        executor.shutdown();
+        assertEquals(1, booked);
+        assertEquals(2, reservationNightRepository.count());
+    }
+
+    @Test
+    public void testCacheIsResyncedWhenTheDatabaseRefusesTheBooking() throws Exception {
+        // booked in the database only, as if the cache had missed it
+        reservationNightRepository.save(new ReservationNight(ApplicationUtils.toDate(LocalDate.now().plusDays(3)),
+                0L));
+        try {
+            reservationService.book(getBookingData(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)));
+            fail();
+        } catch (AvailabilityException e) {
+            assertEquals(Collections.singleton(LocalDate.now().plusDays(3)),
+                    getCachedDates());
+        }
+    }
+
+    @Test
+    public void testBatchRacingAClaimOnlyRefusesTheConflictingBooking() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        // the claim skips the lock of the batch and commits after the batch read its span
+        StatementRecorder.before(sql -> sql.startsWith("insert into reservation_night"), () -> {
+            try {
+                executor.submit(() -> reservationService.book(getBookingData(LocalDate.now().plusDays(3),
+                        LocalDate.now().plusDays(3)))).get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        final List<BookingResult> results = reservationService.bookAll(Arrays.asList(
+                getBookingData(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3)),
+                getBookingData(LocalDate.now().plusDays(5), LocalDate.now().plusDays(6)),
+                getBookingData(LocalDate.now().plusDays(8), LocalDate.now().plusDays(8))));
+        executor.shutdown();
+
+        assertFalse(results.get(0).getBooked());
+        assertTrue(results.get(1).getBooked());
+        assertTrue(results.get(2).getBooked());
+        assertTrue(reservationRepository.findByTransactionId(results.get(1).getTransactionId()).isPresent());
+        assertTrue(reservationRepository.findByTransactionId(results.get(2).getTransactionId()).isPresent());
+        assertEquals(4, reservationNightRepository.count());
+    }
+
+    private BookingData getBookingData(final LocalDate checkIn, final LocalDate checkOut) {
+        return BookingData.builder()
+                .checkIn(checkIn)
+                .checkOut(checkOut)
+                .email("grace.hopper@gmail.com")
+                .name("Grace Hopper")
+                .build();
+    }
+
+    /**
+     * Booked nights of the next 60 days, as dates.
+     */
+    private Set<LocalDate> getCachedDates() {
+        final DateRange window = DateRange.of(LocalDate.now(), LocalDate.now().plusDays(60));
+        final Set<LocalDate> dates = new HashSet<>();
+        reservationCacheRepository.getReservations(window).stream()
+                .forEach(night -> dates.add(LocalDate.ofEpochDay(window.getFirstDay() + night)));
+        return dates;
+    }
+}
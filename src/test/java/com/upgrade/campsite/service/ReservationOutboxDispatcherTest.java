@@ -0,0 +1,124 @@
+package com.upgrade.campsite.service;
+
+import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.exception.AvailabilityException;
+import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationOutboxRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
+import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.utils.DateRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+@SpringBootTest(classes = CampsiteApplication.class)
+@RunWith(SpringRunner.class)
+@ActiveProfiles( "test" )
+public class ReservationOutboxDispatcherTest {
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired
+    private ReservationOutboxRepository reservationOutboxRepository;
+
+    @Autowired
+    private ReservationCacheRepository reservationCacheRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private RedisTemplate<String, LocalDate> template;
+
+    private final LocalDate checkIn = LocalDate.now().plusDays(8);
+
+    @Before
+    public void setup() {
+        reservationOutboxDispatcher.dispatch();
+        reservationCacheRepository.initializeCache();
+    }
+
+    @After
+    public void after() {
+        reservationOutboxDispatcher.dispatch();
+        reservationNightRepository.deleteAll();
+        reservationRepository.deleteAll();
+        template.delete("reservations");
+    }
+
+    @Test
+    public void testCommittedBookingReachesCache() throws Exception {
+        reservationService.book(getBookingData(checkIn, checkIn.plusDays(1)));
+        reservationOutboxDispatcher.dispatch();
+
+        assertEquals(0, reservationOutboxRepository.count());
+        assertEquals(new HashSet<>(Arrays.asList(checkIn, checkIn.plusDays(1))),
+                getCachedDates());
+    }
+
+    @Test
+    public void testCancellationIsAppliedAfterBooking() throws Exception {
+        final String transactionId = reservationService.book(getBookingData(checkIn, checkIn.plusDays(1)));
+        reservationService.unBook(transactionId);
+        reservationOutboxDispatcher.dispatch();
+
+        assertEquals(Collections.emptySet(), getCachedDates());
+    }
+
+    @Test
+    public void testRejectedBookingNeverReachesCache() throws Exception {
+        reservationService.book(getBookingData(checkIn, checkIn.plusDays(1)));
+        reservationOutboxDispatcher.dispatch();
+        try {
+            reservationService.book(getBookingData(checkIn.plusDays(1), checkIn.plusDays(1)));
+        } catch (AvailabilityException e) {
+            // expected, the night is already booked
+        }
+        assertEquals(0, reservationOutboxRepository.count());
+        reservationOutboxDispatcher.dispatch();
+        assertEquals(new HashSet<>(Arrays.asList(checkIn, checkIn.plusDays(1))),
+                getCachedDates());
+    }
+
+    private BookingData getBookingData(final LocalDate checkIn, final LocalDate checkOut) {
+        return BookingData.builder()
+                .checkIn(checkIn)
+                .checkOut(checkOut)
+                .email("marie.curie@gmail.com")
+                .name("Marie Curie")
+                .build();
+    }
+
+    /**
+     * Booked nights of the next 60 days, as dates.
+     */
+    private Set<LocalDate> getCachedDates() {
+        final DateRange window = DateRange.of(LocalDate.now(), LocalDate.now().plusDays(60));
+        final Set<LocalDate> dates = new HashSet<>();
+        reservationCacheRepository.getReservations(window).stream()
+                .forEach(night -> dates.add(LocalDate.ofEpochDay(window.getFirstDay() + night)));
+        return dates;
+    }
+}
@@ -1,12 +1,22 @@
 package com.upgrade.campsite.service;
 
 import com.upgrade.campsite.CampsiteApplication;
+import com.upgrade.campsite.configuration.ReservationCacheHealthIndicator;
 import com.upgrade.campsite.entity.Reservation;
 import com.upgrade.campsite.exception.AvailabilityException;
 import com.upgrade.campsite.exception.BookingDataException;
+import com.upgrade.campsite.exception.ReservationNotFoundException;
 import com.upgrade.campsite.presenter.AvailabilityData;
 import com.upgrade.campsite.presenter.BookingData;
+import com.upgrade.campsite.presenter.BookingResult;
+import com.upgrade.campsite.repository.ReservationCacheRepository;
+import com.upgrade.campsite.repository.ReservationLockRepository;
+import com.upgrade.campsite.repository.ReservationNightRepository;
 import com.upgrade.campsite.repository.ReservationRepository;
+import com.upgrade.campsite.repository.StatementRecorder;
+import com.upgrade.campsite.utils.ApplicationUtils;
+import com.upgrade.campsite.utils.DateRange;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -15,18 +25,31 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @SpringBootTest(classes = CampsiteApplication.class)
 @RunWith(SpringRunner.class)
@@ -39,9 +62,30 @@ public class ReservationServiceTest
     @Autowired
     private ReservationRepository reservationRepository;
 
+    @Autowired
+    private ReservationNightRepository reservationNightRepository;
+
+    @Autowired
+    private ReservationOutboxDispatcher reservationOutboxDispatcher;
+
+    @Autowired
+    private ReservationCacheWarmer reservationCacheWarmer;
+
+    @Autowired
+    private ReservationCacheRepository reservationCacheRepository;
+
     @Autowired
     private RedisTemplate<String, LocalDate> template;
 
+    @Autowired
+    private ReservationCacheHealthIndicator reservationCacheHealthIndicator;
+
+    @Autowired
+    private ReservationLockRepository reservationLockRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${campsite.booking.max-stay}")
     private Long maxBookingDays;
 
@@ -70,7 +114,11 @@ public class ReservationServiceTest
 
     @After
     public void after() throws Exception {
+        // applies the pending events and waits for a rebuild in progress, so none reaches the cache of the next test
+        reservationOutboxDispatcher.dispatch();
+        reservationNightRepository.deleteAll();
         reservationRepository.deleteAll();
+        reservationCacheWarmer.warmUp().get();
         template.delete("reservations");
     }
 
@@ -98,6 +146,21 @@ public class ReservationServiceTest
         reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(7), LocalDate.now().plusDays(7)));
     }
 
+    @Test
+    public void testPartialOverlap() throws Exception {
+        expectedException.expect(AvailabilityException.class);
+        reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(4), LocalDate.now().plusDays(5)));
+    }
+
+    @Test
+    public void testBookReleasedNights() throws Exception {
+        final String transactionId = reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(8),
+                LocalDate.now().plusDays(9)));
+        reservationService.unBook(transactionId);
+        assertNotNull(reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(9),
+                LocalDate.now().plusDays(10))));
+    }
+
     @Test
     public void testBookingDaysOverLimit() throws Exception {
         expectedException.expect(BookingDataException.class);
@@ -126,6 +189,7 @@ public class ReservationServiceTest
 
     @Test
     public void findCampsiteAvailability() throws Exception {
+        reservationOutboxDispatcher.dispatch();
         final List<AvailabilityData> campsiteAvailabilityList = reservationService.findCampsiteAvailability(
                 LocalDate.now(), LocalDate.now().plusDays(10));
 
@@ -139,8 +203,200 @@ public class ReservationServiceTest
 
     @Test
     public void testUnBook() throws Exception {
-        final Reservation reservation = reservationRepository.findNotExpiredReservations().get(0);
+        final Reservation reservation = reservationRepository.findAll().iterator().next();
         reservationService.unBook(reservation.getTransactionId());
         assertEquals(Optional.empty(), reservationRepository.findByTransactionId(reservation.getTransactionId()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUnBookReleasesTheNights() throws Exception {
+        final Reservation reservation = reservationRepository.findAll().iterator().next();
+        reservationService.unBook(reservation.getTransactionId());
+        assertEquals(0, reservationNightRepository.count());
+
+        expectedException.expect(ReservationNotFoundException.class);
+        reservationService.unBook(reservation.getTransactionId());
+    }
+
+    @Test
+    public void testModifyBookMovesOnlyTheChangedNights() throws Exception {
+        final Reservation reservation = reservationRepository.findAll().iterator().next();
+        final BookingData bookingData = getDefaulBookingData(LocalDate.now().plusDays(6), LocalDate.now().plusDays(8));
+        bookingData.setTransactionId(reservation.getTransactionId());
+
+        assertEquals(reservation.getTransactionId(), reservationService.modifyBook(bookingData));
+        reservationOutboxDispatcher.dispatch();
+        assertEquals(3, reservationNightRepository.count());
+        final List<LocalDate> bookedDates = reservationService.findCampsiteAvailability(LocalDate.now(),
+                LocalDate.now().plusDays(10)).stream()
+                .filter(a -> !a.getAvailable())
+                .map(AvailabilityData::getDate)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(LocalDate.now().plusDays(6), LocalDate.now().plusDays(7),
+                LocalDate.now().plusDays(8)), bookedDates);
+        assertNotNull(reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(5),
+                LocalDate.now().plusDays(5))));
+    }
+
+    @Test
+    public void testModifyBookIsValidatedBeforeLocking() throws Exception {
+        final Reservation reservation = reservationRepository.findAll().iterator().next();
+        final BookingData bookingData = getDefaulBookingData(LocalDate.now().plusDays(6), LocalDate.now().plusYears(50));
+        bookingData.setTransactionId(reservation.getTransactionId());
+        final long locks = meterRegistry.timer("campsite.booking.lock.wait", "operation", "modify").count();
+        try {
+            reservationService.modifyBook(bookingData);
+            fail();
+        } catch (BookingDataException e) {
+            assertEquals(locks, meterRegistry.timer("campsite.booking.lock.wait", "operation", "modify").count());
+        }
+    }
+
+    @Test
+    public void testFailedLookupUnderTheLockReleasesTheNights() throws Exception {
+        final Reservation reservation = reservationRepository.findAll().iterator().next();
+        final Predicate<String> lookup = sql -> sql.startsWith("select") && sql.contains("transaction_id=?");
+        // the first lookup finds the period, the one made once the nights are locked times out
+        StatementRecorder.before(lookup, () -> StatementRecorder.before(lookup, () -> {
+            throw new QueryTimeoutException("Query timed out");
+        }));
+        try {
+            reservationService.unBook(reservation.getTransactionId());
+            fail();
+        } catch (QueryTimeoutException e) {
+            // expected
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> reservationLockRepository.lock(DateRange.of(reservation.getStartDate(),
+                    reservation.getEndDate())).close()).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentModificationsKeepTheNightsOfTheReservation() throws Exception {
+        final String transactionId = reservationRepository.findAll().iterator().next().getTransactionId();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 10; round++) {
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<String>> modifications = new ArrayList<>();
+                for (final int checkIn : new int[] { 2, 9 }) {
+                    final BookingData bookingData = getDefaulBookingData(LocalDate.now().plusDays(checkIn),
+                            LocalDate.now().plusDays(checkIn + 2));
+                    bookingData.setTransactionId(transactionId);
+                    modifications.add(executor.submit(() -> {
+                        start.await();
+                        return reservationService.modifyBook(bookingData);
+                    }));
+                }
+                start.countDown();
+                for (final Future<String> modification : modifications) {
+                    assertEquals(transactionId, modification.get());
+                }
+
+                // whichever modification committed last, the nights are exactly the dates of the reservation
+                final Reservation reservation = reservationRepository.findByTransactionId(transactionId).get();
+                final List<Long> nights = reservationNightRepository.findNights(ApplicationUtils.toDate(
+                        LocalDate.now()), ApplicationUtils.toDate(LocalDate.now().plusDays(20))).stream()
+                        .map(ApplicationUtils::toEpochDay)
+                        .sorted()
+                        .collect(Collectors.toList());
+                final List<Long> dates = new ArrayList<>();
+                DateRange.of(reservation.getStartDate(), reservation.getEndDate()).forEachDay(dates::add);
+                assertEquals(dates, nights);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnBookRacingAModificationReleasesTheModifiedNights() throws Exception {
+        final DateRange window = DateRange.of(LocalDate.now(), LocalDate.now().plusDays(20));
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 10; round++) {
+                final String transactionId = round == 0
+                        ? reservationRepository.findAll().iterator().next().getTransactionId()
+                        : reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(5),
+                                LocalDate.now().plusDays(7)));
+                reservationCacheWarmer.warmUp().get();
+                final BookingData bookingData = getDefaulBookingData(LocalDate.now().plusDays(9),
+                        LocalDate.now().plusDays(11));
+                bookingData.setTransactionId(transactionId);
+
+                final CountDownLatch start = new CountDownLatch(1);
+                final Future<?> modification = executor.submit(() -> {
+                    start.await();
+                    try {
+                        return reservationService.modifyBook(bookingData);
+                    } catch (ReservationNotFoundException e) {
+                        // cancelled first
+                        return null;
+                    }
+                });
+                final Future<?> cancellation = executor.submit(() -> {
+                    start.await();
+                    reservationService.unBook(transactionId);
+                    return null;
+                });
+                start.countDown();
+                modification.get();
+                cancellation.get();
+
+                // whichever committed first, the cache releases the nights the cancellation deleted
+                reservationOutboxDispatcher.dispatch();
+                assertEquals(0, reservationNightRepository.count());
+                assertTrue(reservationCacheRepository.getReservations(window).isEmpty());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAvailabilityIsReadFromTheDatabaseWithoutCache() throws Exception {
+        // the booking of the setup is still in the outbox, so only the database knows about it
+        template.delete("reservations:ready");
+        // checked before the read, which starts a rebuild in the background
+        assertEquals(ReservationCacheHealthIndicator.DEGRADED, reservationCacheHealthIndicator.health().getStatus());
+
+        final List<LocalDate> bookedDates = reservationService.findCampsiteAvailability(LocalDate.now(),
+                LocalDate.now().plusDays(10)).stream()
+                .filter(a -> !a.getAvailable())
+                .map(AvailabilityData::getDate)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(LocalDate.now().plusDays(5), LocalDate.now().plusDays(6),
+                LocalDate.now().plusDays(7)), bookedDates);
+
+        reservationCacheWarmer.warmUp().get();
+        assertEquals(Status.UP, reservationCacheHealthIndicator.health().getStatus());
+    }
+
+    @Test
+    public void testModifyBookOverlappingAnotherReservation() throws Exception {
+        final String transactionId = reservationService.book(getDefaulBookingData(LocalDate.now().plusDays(9),
+                LocalDate.now().plusDays(10)));
+        final BookingData bookingData = getDefaulBookingData(LocalDate.now().plusDays(7), LocalDate.now().plusDays(9));
+        bookingData.setTransactionId(transactionId);
+
+        expectedException.expect(AvailabilityException.class);
+        reservationService.modifyBook(bookingData);
+    }
+
+    @Test
+    public void testBookAllRefusesTheBookedNights() throws Exception {
+        final List<BookingResult> results = reservationService.bookAll(Arrays.asList(
+                getDefaulBookingData(LocalDate.now().plusDays(7), LocalDate.now().plusDays(8)),
+                getDefaulBookingData(LocalDate.now().plusDays(8), LocalDate.now().plusDays(9))));
+
+        assertFalse(results.get(0).getBooked());
+        assertTrue(results.get(1).getBooked());
+        assertTrue(reservationRepository.findByTransactionId(results.get(1).getTransactionId()).isPresent());
+        assertEquals(5, reservationNightRepository.count());
+    }
+}
@@ -0,0 +1,104 @@
+package com.upgrade.campsite.utils;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DateRangeLockerTest {
+
+    private static final int OPERATIONS = 120;
+
+    private static final long HOLD_MILLIS = 2;
+
+    private final LocalDate baseDate = LocalDate.now().plusDays(1);
+
+    @Test
+    public void testNonOverlappingBookingsScaleWithThreads() throws Exception {
+        final DateRangeLocker locker = new DateRangeLocker(64);
+
+        final double singleThread = measureThroughput(locker, 1);
+        final double fourThreads = measureThroughput(locker, 4);
+
+        assertTrue(String.format("Expected throughput to grow with threads (1 thread: %.1f ops/s, 4 threads: %.1f ops/s)",
+                singleThread, fourThreads), fourThreads > singleThread * 2);
+    }
+
+    @Test
+    public void testOverlappingBookingsAreSerialized() throws Exception {
+        final DateRangeLocker locker = new DateRangeLocker(64);
+        final int[] counter = new int[1];
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final LocalDate checkIn = baseDate.plusDays(i % 2);
+            tasks.add(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    locker.lock(DateRange.of(checkIn, checkIn.plusDays(2)));
+                    try {
+                        counter[0]++;
+                    } finally {
+                        locker.unlock(DateRange.of(checkIn, checkIn.plusDays(2)));
+                    }
+                }
+                return null;
+            });
+        }
+        executor.invokeAll(tasks);
+        executor.shutdown();
+        assertEquals(8000, counter[0]);
+    }
+
+    @Test
+    public void testRangesInReverseOrderDoNotDeadlock() throws Exception {
+        final DateRangeLocker locker = new DateRangeLocker(4);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> lockRepeatedly(locker, baseDate, baseDate.plusDays(2)));
+        tasks.add(() -> lockRepeatedly(locker, baseDate.plusDays(2), baseDate.plusDays(5)));
+        executor.invokeAll(tasks, 10, TimeUnit.SECONDS).forEach(future -> assertTrue(!future.isCancelled()));
+        executor.shutdown();
+    }
+
+    private Void lockRepeatedly(final DateRangeLocker locker, final LocalDate checkIn, final LocalDate checkOut) {
+        for (int i = 0; i < 10000; i++) {
+            locker.lock(DateRange.of(checkIn, checkOut));
+            locker.unlock(DateRange.of(checkIn, checkOut));
+        }
+        return null;
+    }
+
+    private double measureThroughput(final DateRangeLocker locker, final int threads) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            // every thread books its own 3 nights, so no two threads share a stripe
+            final LocalDate checkIn = baseDate.plusDays(t * 3);
+            final LocalDate checkOut = checkIn.plusDays(2);
+            tasks.add(() -> {
+                for (int i = 0; i < OPERATIONS / threads; i++) {
+                    locker.lock(DateRange.of(checkIn, checkOut));
+                    try {
+                        Thread.sleep(HOLD_MILLIS);
+                    } finally {
+                        locker.unlock(DateRange.of(checkIn, checkOut));
+                    }
+                }
+                return null;
+            });
+        }
+        final long start = System.nanoTime();
+        executor.invokeAll(tasks);
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return OPERATIONS / (elapsed / 1_000_000_000d);
+    }
+}
@@ -0,0 +1,61 @@
+package com.upgrade.campsite.utils;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DateRangeTest {
+
+    private final LocalDate checkIn = LocalDate.of(2019, 3, 30);
+
+    @Test
+    public void testNightsAreIteratedInOrder() {
+        final List<Long> days = new ArrayList<>();
+        DateRange.of(checkIn, checkIn.plusDays(2)).forEachDay(days::add);
+        assertEquals(Arrays.asList(checkIn.toEpochDay(), checkIn.toEpochDay() + 1, checkIn.toEpochDay() + 2), days);
+    }
+
+    @Test
+    public void testLength() {
+        assertEquals(1, DateRange.of(checkIn, checkIn).length());
+        assertEquals(3, DateRange.of(checkIn, checkIn.plusDays(2)).length());
+        assertEquals(0, DateRange.of(checkIn, checkIn.minusDays(1)).length());
+        assertTrue(DateRange.of(checkIn, checkIn.minusDays(1)).isEmpty());
+    }
+
+    @Test
+    public void testSpan() {
+        final DateRange current = DateRange.of(checkIn, checkIn.plusDays(1));
+        final DateRange requested = DateRange.of(checkIn.plusDays(5), checkIn.plusDays(6));
+        assertEquals(DateRange.of(checkIn, checkIn.plusDays(6)), current.span(requested));
+        assertFalse(current.contains(checkIn.plusDays(2).toEpochDay()));
+    }
+
+    @Test
+    public void testDatesMatchTheDatabaseConversion() {
+        final DateRange range = DateRange.of(ApplicationUtils.toDate(checkIn),
+                ApplicationUtils.toDate(checkIn.plusDays(2)));
+        assertEquals(DateRange.of(checkIn, checkIn.plusDays(2)), range);
+        assertEquals(ApplicationUtils.toDate(checkIn), ApplicationUtils.toDate(range.getFirstDay()));
+        assertEquals(checkIn.plusDays(2), range.getEndDate());
+    }
+
+    @Test
+    public void testMinus() {
+        final DateRange current = DateRange.of(checkIn, checkIn.plusDays(2));
+        assertEquals(Arrays.asList(DateRange.of(checkIn, checkIn)),
+                current.minus(DateRange.of(checkIn.plusDays(1), checkIn.plusDays(4))));
+        assertEquals(Arrays.asList(DateRange.of(checkIn, checkIn),
+                DateRange.of(checkIn.plusDays(2), checkIn.plusDays(2))),
+                current.minus(DateRange.of(checkIn.plusDays(1), checkIn.plusDays(1))));
+        assertEquals(Arrays.asList(current), current.minus(DateRange.of(checkIn.plusDays(3), checkIn.plusDays(4))));
+        assertTrue(current.minus(DateRange.of(checkIn.minusDays(1), checkIn.plusDays(3))).isEmpty());
+    }
+}